@@ -0,0 +1,152 @@
+package orm;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+// Executors behind the asynchronous CRUD of Table (searchAsync, addAsync...), on virtual threads
+// unless configured otherwise. Reads run concurrently. Writes go through a lane running one at a time
+// in submission order: SQLite only has one writer, queued here they don't all wait on its busy timeout.
+// With the WriteQueue enabled, writes are handed to its writer thread instead
+public class Async {
+
+    private static volatile Executor reads = Executors.newVirtualThreadPerTaskExecutor();
+    private static volatile SerialExecutor writes = new SerialExecutor(reads);
+
+    // both lanes on the same executor, the writes still one at a time
+    public static void configure(Executor executor) {
+        configure(executor, executor);
+    }
+
+    public static void configure(Executor readExecutor, Executor writeExecutor) {
+
+        if (readExecutor == null || writeExecutor == null) {
+            throw new IllegalArgumentException("Async operations need an executor for both reads and writes!");
+        }
+
+        reads = readExecutor;
+        writes = new SerialExecutor(writeExecutor, writes);
+    }
+
+    static <T> CompletableFuture<T> read(Supplier<T> work) {
+        return submit(work, reads);
+    }
+
+    // the write queue's writer takes over when it's enabled
+    static <T> CompletableFuture<T> write(Supplier<T> work) {
+        var queued = Transaction.isActive() ? null : WriteQueue.submit(work);
+        if (queued != null) {
+            return queued;
+        }
+        checkNoTransaction();
+        return writes.submit(work);
+    }
+
+    // the work runs on another thread, it can't join a transaction bound to this one
+    private static <T> CompletableFuture<T> submit(Supplier<T> work, Executor executor) {
+        checkNoTransaction();
+        return CompletableFuture.supplyAsync(work, executor);
+    }
+
+    private static void checkNoTransaction() {
+        if (Transaction.isActive()) {
+            throw new IllegalStateException("Asynchronous operations can't be part of the current transaction!");
+        }
+    }
+
+    // Runs its tasks one after the other on the underlying executor. A task the executor rejects fails
+    // its future and the next one is tried. A lane replaced by configure() hands its queued tasks over
+    // to the new one, which only starts once the task still running on the old one is done
+    static class SerialExecutor {
+
+        private final Executor executor;
+        private final Queue<Task> tasks = new ArrayDeque<>();
+        private Task active;
+        private boolean blocked;
+        private SerialExecutor successor;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        SerialExecutor(Executor executor, SerialExecutor previous) {
+            this.executor = executor;
+            synchronized (previous) {
+                tasks.addAll(previous.tasks);
+                previous.tasks.clear();
+                blocked = previous.active != null || previous.blocked;
+                previous.successor = this;
+            }
+            if (!blocked) {
+                unblock();
+            }
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<T> work) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            execute(new Task(() -> {
+                try {
+                    future.complete(work.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(new CompletionException(e));
+                }
+            }, future));
+            return future;
+        }
+
+        private synchronized void execute(Task task) {
+            if (successor != null) {
+                successor.execute(task);
+                return;
+            }
+            tasks.add(task);
+            if (active == null && !blocked) {
+                next();
+            }
+        }
+
+        private synchronized void next() {
+
+            if (successor != null) {
+                active = null;
+                if (!blocked) {
+                    successor.unblock();
+                }
+                return;
+            }
+
+            while ((active = tasks.poll()) != null) {
+                Task task = active;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.work().run();
+                        } finally {
+                            next();
+                        }
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    task.future().completeExceptionally(e);
+                }
+            }
+        }
+
+        // the previous lane's last task is done
+        private synchronized void unblock() {
+            blocked = false;
+            if (successor != null) {
+                successor.unblock();
+            } else if (active == null) {
+                next();
+            }
+        }
+
+        private record Task(Runnable work, CompletableFuture<?> future) {}
+    }
+}
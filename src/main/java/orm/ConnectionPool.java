@@ -0,0 +1,386 @@
+package orm;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sqlite.SQLiteConfig.TransactionMode;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import orm.util.BugDetectedException;
+
+import static orm.util.Console.error;
+
+// Bounded pool of long-lived SQLite connections shared by every CRUD path.
+// A thread that already holds a connection gets the same one back (nested searches, cascades...)
+// Each connection keeps its prepared statements in an LRU cache keyed by their SQL template
+public class ConnectionPool implements AutoCloseable {
+
+    private static final int ACQUIRE_TIMEOUT_SECONDS = 30;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+    private final String url;
+    private final int maxSize;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingQueue<PooledConnection> idle;
+    private final ThreadLocal<PooledConnection> held = new ThreadLocal<>();
+    private volatile boolean closed = false;
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    ConnectionPool(String url, int maxSize, int statementCacheSize) {
+
+        if (maxSize < 1) {
+            String s = "The connection pool needs at least one connection, got: %s";
+            throw new IllegalArgumentException(String.format(s, maxSize));
+        }
+
+        this.url = url;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new LinkedBlockingQueue<>(maxSize);
+    }
+
+    PooledConnection acquire() {
+
+        PooledConnection current = held.get();
+        if (current != null) {
+            current.depth++;
+            reused.incrementAndGet();
+            return current;
+        }
+
+        PooledConnection conn = lease();
+        conn.depth = 1;
+        held.set(conn);
+        return conn;
+    }
+
+    // A connection no thread holds, for a cursor outliving the call that opened it: it may be given back from
+    // any thread. Its own searches go through it only while attached to the thread running them, see attach()
+    PooledConnection acquireDetached() {
+        PooledConnection conn = lease();
+        conn.depth = 1;
+        conn.detached = true;
+        return conn;
+    }
+
+    private PooledConnection lease() {
+
+        if (closed) {
+            throw new IllegalStateException("Attempting to use the connection pool after its shutdown!");
+        }
+
+        try {
+            if (!permits.tryAcquire()) {
+                waited.incrementAndGet();
+                if (!permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    String s = "No connection available after %s seconds (pool size: %s)!";
+                    throw new IllegalStateException(String.format(s, ACQUIRE_TIMEOUT_SECONDS, maxSize));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection!");
+        }
+
+        PooledConnection conn;
+        try {
+            while ((conn = idle.poll()) != null && !conn.isHealthy()) {
+                discard(conn);
+            }
+            if (conn == null) {
+                conn = open();
+            }
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        acquired.incrementAndGet();
+        return conn;
+    }
+
+    private void release(PooledConnection conn) {
+
+        if (--conn.depth > 0) {
+            return;
+        }
+        if (conn.detached) {
+            conn.detached = false;
+        } else {
+            held.remove();
+        }
+
+        try {
+            if (!conn.connection.getAutoCommit()) {
+                conn.connection.rollback();
+                conn.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            error(e);
+            discard(conn);
+            permits.release();
+            return;
+        }
+
+        if (closed || !idle.offer(conn)) {
+            discard(conn);
+        }
+        permits.release();
+    }
+
+    private PooledConnection open() {
+
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MILLIS));
+
+        try {
+            var conn = new PooledConnection(DriverManager.getConnection(url, properties));
+            open.incrementAndGet();
+            created.incrementAndGet();
+            return conn;
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nWhile opening: %s", e, url), e);
+        }
+    }
+
+    private void discard(PooledConnection conn) {
+        try {
+            conn.connection.close();
+        } catch (SQLException e) {
+            error(e);
+        }
+        open.decrementAndGet();
+        discarded.incrementAndGet();
+    }
+
+    // closes the idle connections now and the leased ones as they are given back
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.poll()) != null) {
+            discard(conn);
+        }
+    }
+
+    // SQLITE_BUSY: the lock was still taken when the busy timeout ran out, or waiting for it could have
+    // deadlocked (a deferred transaction upgrading to a writer). Trying again later can succeed
+    static boolean isBusy(Throwable e) {
+        for (; e != null; e = e.getCause()) {
+            if (e instanceof SQLiteException sqlite && (sqlite.getResultCode().code & 0xff) == SQLiteErrorCode.SQLITE_BUSY.code) {
+                return true;
+            }
+        } return false;
+    }
+
+    // whether this thread is already leasing a connection
+    boolean isHeld() {
+        return held.get() != null;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public Stats stats() {
+        return new Stats(
+            maxSize, open.get(), idle.size(),
+            created.get(), acquired.get(), reused.get(), waited.get(), discarded.get(),
+            statementHits.get(), statementMisses.get(), statementEvictions.get()
+        );
+    }
+
+    // 'acquired' counts physical checkouts, 'reused' the nested ones served by the connection already held
+    public record Stats(
+        int maxSize, int open, int idle,
+        long created, long acquired, long reused, long waited, long discarded,
+        long statementHits, long statementMisses, long statementEvictions
+    ) {
+
+        public int leased() {
+            return open - idle;
+        }
+
+        public double statementHitRate() {
+            long total = statementHits + statementMisses;
+            return total == 0 ? 0 : (double) statementHits / total;
+        }
+
+        @Override
+        public String toString() {
+            String s = "Pool: %s/%s open (%s idle), %s created, %s acquired, %s reused, %s waited, %s discarded"
+                + "\nStatements: %s hits, %s misses, %s evictions";
+            return String.format(
+                s, open, maxSize, idle, created, acquired, reused, waited, discarded,
+                statementHits, statementMisses, statementEvictions
+            );
+        }
+    }
+
+    // A leased connection, closing it gives it back to the pool
+    class PooledConnection implements AutoCloseable {
+
+        private final Connection connection;
+        private final Map<String,PreparedStatement> statements;
+        private int depth;
+        private boolean detached;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    closeQuietly(eldest.getValue());
+                    statementEvictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+
+        Connection connection() {
+            return connection;
+        }
+
+        // checks the statement out of the cache, so a nested use of the same template gets its own
+        CachedStatement prepare(String template) throws SQLException {
+
+            PreparedStatement pstmt = statements.remove(template);
+            if (pstmt != null) {
+                statementHits.incrementAndGet();
+            } else {
+                statementMisses.incrementAndGet();
+                pstmt = connection.prepareStatement(template);
+            }
+
+            return new CachedStatement(template, pstmt);
+        }
+
+        // Lends a detached connection to the current thread, unless it holds one already, until the returned
+        // scope is closed: the searches made meanwhile (foreign keys...) reuse it instead of leasing another.
+        // Closed meanwhile, the connection goes back to the pool with the scope
+        Attachment attach() {
+            if (!detached || held.get() != null) {
+                return () -> {};
+            }
+            depth++;
+            held.set(this);
+            return () -> {
+                held.remove();
+                release(this);
+            };
+        }
+
+        interface Attachment extends AutoCloseable {
+            @Override
+            void close();
+        }
+
+        // Transactions are deferred unless they're meant to write: those take the write lock with BEGIN IMMEDIATE,
+        // waiting for it like any statement. Deferred, SQLite would fail them on their first write after a read
+        void begin(boolean write) throws SQLException {
+            var config = connection.unwrap(SQLiteConnection.class).getConnectionConfig();
+            config.setTransactionMode(write ? TransactionMode.IMMEDIATE : TransactionMode.DEFERRED);
+            try {
+                connection.setAutoCommit(false);
+            } finally {
+                // the driver begins the next one right after a commit, it mustn't hold the lock in between
+                config.setTransactionMode(TransactionMode.DEFERRED);
+            }
+        }
+
+        Statement createStatement() throws SQLException {
+            return connection.createStatement();
+        }
+
+        private void giveBack(String template, PreparedStatement pstmt) {
+            try {
+                pstmt.clearParameters();
+                if (statementCacheSize > 0 && !statements.containsKey(template)) {
+                    statements.put(template, pstmt);
+                    return;
+                }
+            } catch (SQLException e) {
+                error(e);
+            }
+            closeQuietly(pstmt);
+        }
+
+        private boolean isHealthy() {
+            try {
+                return !connection.isClosed() && connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+
+        // A prepared statement borrowed from the cache, closing it puts it back
+        class CachedStatement implements AutoCloseable {
+
+            private final String template;
+            private final PreparedStatement pstmt;
+
+            private CachedStatement(String template, PreparedStatement pstmt) {
+                this.template = template;
+                this.pstmt = pstmt;
+            }
+
+            PreparedStatement get() {
+                return pstmt;
+            }
+
+            @Override
+            public void close() {
+                giveBack(template, pstmt);
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            error(e);
+        }
+    }
+}
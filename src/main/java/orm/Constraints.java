@@ -18,6 +18,14 @@ public @interface Constraints {
     String boundedPair() default "";
 
     boolean searchedText() default false;   // use the LIKE operator
+    boolean fullText() default false;       // on a searchedText: all of them go through one FTS5 index instead
     boolean enumerated() default false;
-    boolean unique() default false;
+    boolean unique() default false;         // backed by a UNIQUE index, not built (reported) over existing duplicates
+
+    // Indexes, created with the table. Foreign keys are always indexed
+    boolean indexed() default false;
+    String index() default "";              // composite index: the fields sharing a name, in field order
+    String uniqueIndex() default "";        // same as index() but UNIQUE, existing duplicates as for unique()
+    String indexWhere() default "";         // partial index: SQL condition on the index(es) of this field
+    boolean intervalIndex() default false;  // on a lowerBound: R*Tree over (lowerBound, boundedPair), dates or numbers
 }
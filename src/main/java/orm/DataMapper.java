@@ -1,91 +1,458 @@
 package orm;
 
+import java.lang.ref.Cleaner;
+
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 
 import java.time.LocalDate;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import orm.ConnectionPool.PooledConnection;
+import orm.ConnectionPool.PooledConnection.CachedStatement;
+import orm.Reflection.FieldInfos;
+import orm.Reflection.DoubleWriter;
+import orm.Reflection.FieldWriter;
+import orm.Reflection.IntWriter;
+import orm.Table.Aggregate;
+import orm.util.BugDetectedException;
 
+import static orm.util.Console.error;
+import static orm.Reflection.getModel;
 import static orm.Reflection.getModelInstance;
 
 class DataMapper {
 
-    private static Map<Class<?>,PreparedStatementSetter> javaClassPstmtSetter;
-    private static Map<Class<?>,ResultSetGetter> javaClassResultSetGetter;
+    // keeps 'id IN (...)' well under SQLite's bound parameters limit
+    private static final int MAX_IDS_PER_SEARCH = 500;
+
+    // read-only once the class is initialized
+    private static final Map<Class<?>,PreparedStatementSetter> javaClassPstmtSetter;
+    private static final Map<Class<?>,ResultSetGetter> javaClassResultSetGetter;
 
     static {
-        javaClassPstmtSetter = new HashMap<>();
-        javaClassResultSetGetter = new HashMap<>();
+        Map<Class<?>,PreparedStatementSetter> pstmtSetters = new HashMap<>();
+        Map<Class<?>,ResultSetGetter> resultSetGetters = new HashMap<>();
         addType(
+            pstmtSetters, resultSetGetters,
             String.class, 
             ResultSet::getString,
             (pstmt, i, value) -> pstmt.setString(i, (String) value)
         );
         addType(
+            pstmtSetters, resultSetGetters,
             Double.class,
             ResultSet::getDouble,
             (pstmt, i, value) -> pstmt.setDouble(i, (Double) value)
         );
         addType(
+            pstmtSetters, resultSetGetters,
             Integer.class, 
             ResultSet::getInt,
             (pstmt, i, value) -> pstmt.setInt(i, (Integer) value)
         );
         addType(
+            pstmtSetters, resultSetGetters,
             LocalDate.class, 
             (rs, col) -> Table.stringToDate(rs.getString(col)),
             (pstmt, i, value) -> pstmt.setString(i, value.toString())
         );
+        javaClassPstmtSetter = Map.copyOf(pstmtSetters);
+        javaClassResultSetGetter = Map.copyOf(resultSetGetters);
     }
 
     static void bindValues(PreparedStatement pstmt, Vector<Object> atts) throws SQLException {
         int i=1;
         for (Object att : atts) {
-            if (att instanceof Table) {
+            if (att == null) {
+                pstmt.setNull(i, Types.NULL);
+            } else if (att instanceof Table) {
                 pstmt.setInt(i, ((Table)att).getId());
+            } else if (att instanceof Ref<?> ref) {
+                pstmt.setInt(i, ref.getId());
             } else {
                 getSetter(att.getClass()).set(pstmt, i, att);
             } i++;
         }
     }
 
-    static Vector<Table> fetchResutls(PreparedStatement pstmt, String className) throws SQLException {
+    static Vector<Table> fetchResutls(PreparedStatement pstmt, String className, String projection, Fetch fetch) throws SQLException {
 
         Vector<Table> tuples = new Vector<>();
-        ResultSet rs = pstmt.executeQuery();
+        References references = new References();
+        IdentityMap identities = IdentityMap.current();
+        Class<? extends Table> model = getModel(className);
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+            RowMapper mapper = RowMapper.of(model, projection, rs);
+            while (rs.next()) {
+                tuples.add(mapRow(rs, mapper, fetch, references, identities));
+            }
+        }
+
+        references.resolve();
+        return tuples;
+    }
+
+    // the aggregate first, then the group's values: one entry per row, keyed by the group
+    static Map<List<Object>,Object> fetchAggregates(PreparedStatement pstmt, FieldInfos fields, Aggregate<?> aggregate) throws SQLException {
+
+        Map<List<Object>,Object> groups = new LinkedHashMap<>();
+        int[] groupFields = new int[aggregate.groupBy().size()];
+        for (int k=0;k<groupFields.length;k++) {
+            groupFields[k] = fields.indexOf(aggregate.groupBy().get(k));
+        }
+
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                Object[] group = new Object[groupFields.length];
+                for (int k=0;k<groupFields.length;k++) {
+                    group[k] = readAttribute(rs, k + 2, fields, groupFields[k]);
+                }
+                groups.put(Collections.unmodifiableList(Arrays.asList(group)), readAggregate(rs, fields, aggregate));
+            }
+        }
+
+        return groups;
+    }
+
+    // typed after the attribute, the driver can't tell an integer sum from a real one
+    private static Object readAggregate(ResultSet rs, FieldInfos fields, Aggregate<?> aggregate) throws SQLException {
+
+        if (rs.getObject(1) == null) {
+            return null;
+        }
+
+        return switch (aggregate.function()) {
+            case COUNT -> rs.getLong(1);
+            case SUM -> isIntegral(fields.typeOf(aggregate.attributeName())) ? (Number) rs.getLong(1) : (Number) rs.getDouble(1);
+            case AVG -> rs.getDouble(1);
+            case MIN, MAX -> readAttribute(rs, 1, fields, fields.indexOf(aggregate.attributeName()));
+        };
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type.equals(Integer.class) || type.equals(Long.class) || type.equals(Short.class) || type.equals(Byte.class)
+            || type.equals(int.class) || type.equals(long.class) || type.equals(short.class) || type.equals(byte.class);
+    }
+
+    // a foreign key is read as a Ref, nothing gets loaded
+    private static Object readAttribute(ResultSet rs, int col, FieldInfos fields, int i) throws SQLException {
+
+        if (rs.getObject(col) == null) {
+            return null;
+        }
+
+        if (fields.isAggregation(i)) {
+            return Ref.of(fields.referenced[i].asSubclass(Table.class), rs.getInt(col));
+        }
+
+        ResultSetGetter getter = getGetter(fields.types[i]);
+        return getter == null ? rs.getObject(col) : getter.get(rs, col);
+    }
+
+    // foreign keys are either resolved right away (PER_ROW) or left to the references (BATCH)
+    private static Table mapRow(ResultSet rs, RowMapper mapper, Fetch fetch, References references, IdentityMap identities) throws SQLException {
+
+        Table known = identities == null ? null : identities.get(mapper.model, rs.getInt(mapper.idColumn));
+        if (known != null) {
+            return known;
+        }
+
+        Table tuple = getModelInstance(mapper.model);
+        if (mapper.generated != null) {
+            mapper.generated.bind(rs, tuple);
+        }
+
+        for (RowMapper.Column column : mapper.columns) {
+
+            if (column.referenced() == null) {
+                column.binding().bind(rs, tuple);
+                continue;
+            }
+
+            int id = rs.getInt(column.index());
+            if (id == 0 && rs.wasNull()) {
+                continue;
+            } else if (column.lazy()) {
+                column.writer().write(tuple, Ref.of(column.referenced(), id));
+            } else if (fetch == Fetch.PER_ROW) {
+                column.writer().write(tuple, idToInstance(id, column.referenced().getSimpleName()));
+            } else {
+                references.add(tuple, column.writer(), column.referenced().getSimpleName(), id);
+            }
+        }
+
+        if (identities != null) {
+            identities.put(tuple);
+        } return tuple;
+    }
+
+    // Row mapping plan compiled once per model and projection: column positions resolved by name only once,
+    // and per column a binding reading its value with the getter of its type (getInt, getDouble...)
+    // straight into the field, without going through an Object returning reader. With a generated mapper,
+    // the columns it binds are read by its own code in one call, the other ones are left here
+    static class RowMapper {
+
+        private static final Map<Key,RowMapper> mappers = new ConcurrentHashMap<>();
+
+        private record Key(Class<? extends Table> model, String projection) {}
+
+        final Class<? extends Table> model;
+        final int idColumn;
+        final Binding generated;
+        final Column[] columns;
+
+        private RowMapper(Class<? extends Table> model, int idColumn, Binding generated, Column[] columns) {
+            this.model = model;
+            this.idColumn = idColumn;
+            this.generated = generated;
+            this.columns = columns;
+        }
+
+        // the projection is the select's column list, the same one always gives the same layout
+        static RowMapper of(Class<? extends Table> model, String projection, ResultSet rs) throws SQLException {
+            var key = new Key(model, projection);
+            RowMapper mapper = mappers.get(key);
+            if (mapper == null) {
+                mapper = compile(model, rs);
+                mappers.put(key, mapper);
+            } return mapper;
+        }
+
+        // column positions change with the table, so after DDL
+        static void clear() {
+            mappers.clear();
+        }
+
+        private static RowMapper compile(Class<? extends Table> model, ResultSet rs) throws SQLException {
+
+            FieldInfos fields = Reflection.fieldsOf(model);
+            GeneratedMapper<Table> mapper = fields.mapper;
+            List<Column> columns = new ArrayList<>();
+            int[] indexes = new int[fields.count];
+            boolean bound = false;
+
+            for (int i=0;i<fields.count;i++) {
+
+                int index = rs.findColumn(SQLiteQueryConstructor.columnName(fields.names[i], fields.constraints[i]));
+                indexes[i] = index;
+                if (mapper != null && mapper.isBound(i)) {
+                    bound = true;
+                    continue;
+                }
+
+                FieldWriter writer = fields.writerOf(i);
+                Class<? extends Table> referenced = fields.isAggregation(i) ? fields.referenced[i].asSubclass(Table.class) : null;
+                Binding binding = referenced == null ? bindingOf(fields, i, index, writer) : null;
+                columns.add(new Column(index, binding, writer, referenced, fields.isLazy(i)));
+            }
+
+            Binding generated = bound ? (row, tuple) -> mapper.bind(row, indexes, tuple) : null;
+            return new RowMapper(model, rs.findColumn("id"), generated, columns.toArray(Column[]::new));
+        }
+
+        // primitive fields are written as such. getInt/getDouble give 0 for NULL, wasNull() is only worth
+        // asking then, and never for NOT NULL columns
+        private static Binding bindingOf(FieldInfos fields, int field, int col, FieldWriter writer) {
+
+            Class<?> type = fields.types[field];
+            if (type.equals(int.class)) {
+                IntWriter ints = fields.intWriterOf(field);
+                return (rs, tuple) -> ints.write(tuple, rs.getInt(col));
+            }
+
+            if (type.equals(double.class)) {
+                DoubleWriter doubles = fields.doubleWriterOf(field);
+                return (rs, tuple) -> doubles.write(tuple, rs.getDouble(col));
+            }
+
+            boolean nullable = fields.constraints[field].nullable();
+            if (type.equals(Integer.class)) {
+                return !nullable
+                    ? (rs, tuple) -> writer.write(tuple, rs.getInt(col))
+                    : (rs, tuple) -> {
+                        int v = rs.getInt(col);
+                        writer.write(tuple, v == 0 && rs.wasNull() ? null : v);
+                    };
+            }
 
-        while (rs.next()) {
-            Table tuple = getModelInstance(className);
-            for (int i=0;i<tuple.reflect.fields.count;i++) {
-                String colName = tuple.query.columns.elementAt(i).name();
-                Class<?> attClass = tuple.reflect.fields.typeOf(i);
-                Object value = getValue(rs, colName, attClass);
-                tuple.reflect.fields.set(i, value);
-            } tuples.add(tuple);
-        } return tuples;
+            if (type.equals(Double.class)) {
+                return !nullable
+                    ? (rs, tuple) -> writer.write(tuple, rs.getDouble(col))
+                    : (rs, tuple) -> {
+                        double v = rs.getDouble(col);
+                        writer.write(tuple, v == 0 && rs.wasNull() ? null : v);
+                    };
+            }
+
+            if (type.equals(String.class)) {
+                return (rs, tuple) -> writer.write(tuple, rs.getString(col));
+            }
+
+            if (type.equals(LocalDate.class)) {
+                return (rs, tuple) -> writer.write(tuple, Table.stringToDate(rs.getString(col)));
+            }
+
+            ResultSetGetter getter = getGetter(type);
+            return getter == null
+                ? (rs, tuple) -> writer.write(tuple, rs.getObject(col))
+                : (rs, tuple) -> writer.write(tuple, getter.get(rs, col));
+        }
+
+        @FunctionalInterface
+        interface Binding {
+            void bind(ResultSet rs, Table tuple) throws SQLException;
+        }
+
+        // foreign keys have no binding, mapRow() resolves them
+        record Column(int index, Binding binding, FieldWriter writer, Class<? extends Table> referenced, boolean lazy) {}
     }
 
-    private static Object getValue(ResultSet rs, String columnName, Class<?> attributeClass) throws SQLException {
-        if (Table.class.isAssignableFrom(attributeClass)) {
-            return idToInstance(rs.getInt(columnName), attributeClass.getSimpleName());
-        } else {
-            Object v = getGetter(attributeClass).get(rs, columnName);
-            return rs.wasNull() ? null : v;
+    // Reads a result set chunk by chunk, each chunk resolving its foreign keys in batches.
+    // It owns a detached connection (see ConnectionPool.acquireDetached()) until closed, from any thread.
+    // One never closed is closed once unreachable, with an error telling it leaked a connection meanwhile
+    static class Cursor implements Iterator<Table>, AutoCloseable {
+
+        private static final Cleaner cleaner = Cleaner.create();
+
+        private final PooledConnection conn;
+        private final ResultSet rs;
+        private final RowMapper mapper;
+        private final int fetchSize;
+        private final Resources resources;
+        private final Cleaner.Cleanable cleanable;
+
+        private final Deque<Table> chunk = new ArrayDeque<>();
+        private boolean exhausted = false;
+
+        Cursor(PooledConnection conn, CachedStatement stmt, String className, String projection, int fetchSize) throws SQLException {
+            this.conn = conn;
+            this.fetchSize = fetchSize;
+            stmt.get().setFetchSize(fetchSize);
+            this.rs = stmt.get().executeQuery();
+            this.mapper = RowMapper.of(getModel(className), projection, rs);
+            this.resources = new Resources(conn, stmt, rs, className);
+            this.cleanable = cleaner.register(this, resources);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (chunk.isEmpty() && !exhausted) {
+                readChunk();
+            } return !chunk.isEmpty();
+        }
+
+        @Override
+        public Table next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            } return chunk.poll();
+        }
+
+        private synchronized void readChunk() {
+
+            if (resources.closed) {
+                exhausted = true;
+                return;
+            }
+
+            // a fresh identity map per chunk keeps memory flat, unless the caller opened a session
+            try (var _ = conn.attach(); IdentityMap identities = IdentityMap.open()) {
+
+                References references = new References();
+                while (chunk.size() < fetchSize && rs.next()) {
+                    chunk.add(mapRow(rs, mapper, Fetch.BATCH, references, identities));
+                }
+                references.resolve();
+
+                if (chunk.size() < fetchSize) {
+                    exhausted = true;
+                    close();
+                }
+
+            } catch (SQLException e) {
+                close();
+                throw new BugDetectedException(String.format("%s\n\nWhile streaming %s", e, mapper.model.getSimpleName()), e);
+            }
+        }
+
+        // waits for a chunk being read on another thread
+        @Override
+        public synchronized void close() {
+            exhausted = true;
+            resources.closed = true;
+            cleanable.clean();
+        }
+
+        // what the cleaner closes, it mustn't reach the cursor
+        private static class Resources implements Runnable {
+
+            private final PooledConnection conn;
+            private final CachedStatement stmt;
+            private final ResultSet rs;
+            private final String className;
+            private volatile boolean closed = false;
+
+            Resources(PooledConnection conn, CachedStatement stmt, ResultSet rs, String className) {
+                this.conn = conn;
+                this.stmt = stmt;
+                this.rs = rs;
+                this.className = className;
+            }
+
+            @Override
+            public void run() {
+
+                if (!closed) {
+                    error("A stream of %s was never closed, its connection is given back now", className);
+                }
+
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    error(e);
+                } finally {
+                    stmt.close();
+                    conn.close();
+                }
+            }
         }
     }
 
     private static Table idToInstance(int id, String className) {
 
+        IdentityMap identities = IdentityMap.current();
+        Table known = identities == null ? null : identities.get(getModel(className), id);
+        if (known != null) {
+            return known;
+        }
+
         Table c = getModelInstance(className);
         c.id = id;
 
         Integer found = null;
-        if (Table.isSearchable(className)) {
-            Vector<Table> r = Table.search(c);
+        boolean searchable = Table.isSearchable(className);
+        if (searchable) {
+            Vector<Table> r = Table.search(c, Fetch.PER_ROW);
             found = r.size();
             if (r.size() > 0) {
                 return r.elementAt(0);
@@ -93,12 +460,87 @@ class DataMapper {
         }
 
         String s = "idToInstance exception: (isSearchable, size, className) = (%s, %s, %s)";
-        throw new IllegalArgumentException(String.format(s, Table.isSearchable(className), found, className));
+        throw new IllegalArgumentException(String.format(s, searchable, found, className));
+    }
+
+    // Foreign keys read from a result set, waiting to be resolved all at once per referenced model
+    private static class References {
+
+        private final Map<String,List<Reference>> byModel = new HashMap<>();
+
+        void add(Table tuple, FieldWriter field, String modelName, int id) {
+            byModel.computeIfAbsent(modelName, _ -> new ArrayList<>()).add(new Reference(tuple, field, id));
+        }
+
+        void resolve() {
+            for (var entry : byModel.entrySet()) {
+
+                Set<Integer> ids = new LinkedHashSet<>();
+                for (Reference ref : entry.getValue()) {
+                    ids.add(ref.id());
+                }
+
+                Map<Integer,Table> instances = idsToInstances(ids, entry.getKey());
+                for (Reference ref : entry.getValue()) {
+                    ref.field().write(ref.tuple(), instances.get(ref.id()));
+                }
+            }
+        }
+
+        private record Reference(Table tuple, FieldWriter field, int id) {}
+    }
+
+    // one search per chunk of ids, each of them resolving its own foreign keys the same way
+    private static Map<Integer,Table> idsToInstances(Collection<Integer> ids, String className) {
+
+        if (!Table.isSearchable(className)) {
+            String s = "idsToInstances exception: no table to search for %s";
+            throw new IllegalArgumentException(String.format(s, className));
+        }
+
+        Map<Integer,Table> instances = new HashMap<>();
+        Vector<Table> criterias = new Vector<>();
+        IdentityMap identities = IdentityMap.current();
+
+        for (Integer id : ids) {
+
+            Table known = identities == null ? null : identities.get(getModel(className), id);
+            if (known != null) {
+                instances.put(id, known);
+                continue;
+            }
+
+            Table c = getModelInstance(className);
+            c.id = id;
+            criterias.add(c);
+
+            if (criterias.size() == MAX_IDS_PER_SEARCH) {
+                for (Table tuple : Table.search(criterias, null, Fetch.BATCH)) {
+                    instances.put(tuple.getId(), tuple);
+                } criterias = new Vector<>();
+            }
+        }
+
+        if (criterias.size() > 0) {
+            for (Table tuple : Table.search(criterias, null, Fetch.BATCH)) {
+                instances.put(tuple.getId(), tuple);
+            }
+        }
+
+        if (instances.size() != ids.size()) {
+            String s = "idsToInstances exception: (expected, found, className) = (%s, %s, %s)";
+            throw new IllegalArgumentException(String.format(s, ids.size(), instances.size(), className));
+        }
+
+        return instances;
     }
 
-    private static void addType(Class<?> type, ResultSetGetter resultSetGetter, PreparedStatementSetter pstmtSetter) {
-        javaClassPstmtSetter.put(type, pstmtSetter);
-        javaClassResultSetGetter.put(type, resultSetGetter);
+    private static void addType(
+        Map<Class<?>,PreparedStatementSetter> pstmtSetters, Map<Class<?>,ResultSetGetter> resultSetGetters,
+        Class<?> type, ResultSetGetter resultSetGetter, PreparedStatementSetter pstmtSetter
+    ) {
+        pstmtSetters.put(type, pstmtSetter);
+        resultSetGetters.put(type, resultSetGetter);
     }
 
     private static PreparedStatementSetter getSetter(Class<?> type) {
@@ -115,7 +557,7 @@ class DataMapper {
     }
 
     @FunctionalInterface
-    private interface ResultSetGetter {
-        public Object get(ResultSet rs, String col) throws SQLException;
+    interface ResultSetGetter {
+        public Object get(ResultSet rs, int col) throws SQLException;
     }
 }
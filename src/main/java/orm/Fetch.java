@@ -0,0 +1,12 @@
+package orm;
+
+// How the aggregated (foreign key) attributes of searched tuples get loaded
+public enum Fetch {
+
+    // one search per row and per foreign key
+    PER_ROW,
+
+    // ids are collected over the whole result, then each referenced model is loaded
+    // with a single 'WHERE id IN (...)' search, level by level through nested aggregations
+    BATCH
+}
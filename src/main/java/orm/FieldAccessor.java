@@ -0,0 +1,32 @@
+package orm;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+// Template of the accessor Reflection.Accessors defines for each field: a hidden copy of this
+// class gets the field's getter and setter as class data, read into static finals the JIT treats
+// as constants. Never initialized itself, it has no class data
+final class FieldAccessor implements Reflection.Accessors.FieldAccess {
+
+    private static final MethodHandle GETTER = handle(0);
+    private static final MethodHandle SETTER = handle(1);
+
+    private static MethodHandle handle(int i) {
+        try {
+            return MethodHandles.classDataAt(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class, i);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Object get(Table tuple) throws Throwable {
+        return (Object) GETTER.invokeExact(tuple);
+    }
+
+    @Override
+    public void set(Table tuple, Object value) throws Throwable {
+        SETTER.invokeExact(tuple, value);
+    }
+}
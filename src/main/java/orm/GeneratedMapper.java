@@ -0,0 +1,57 @@
+package orm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Implemented by the <Model>_Mapper classes MapperProcessor generates next to each model.
+// Fields are numbered like in Reflection.FieldInfos: the id first, then the model's own fields.
+// A private field is reached through the model's getX()/setX(...) methods, when it has them
+public interface GeneratedMapper<T extends Table> {
+
+    // checked against the reflected fields before the mapper is trusted
+    String[] fieldNames();
+
+    // erased, as Field.getType() gives them
+    Class<?>[] fieldTypes();
+
+    // per field, as Reflection.signatureOf() renders its @Constraints
+    String[] fieldConstraints();
+
+    // read and written by the mapper: non-private fields, and private ones having a getter and a setter
+    // of the field's type. The id (declared in orm) is left to reflection
+    boolean isAccessible(int field);
+
+    T newInstance();
+
+    Object get(T tuple, int field);
+
+    void set(T tuple, int field, Object value);
+
+    // read from a row by bind(): attributes of a plain type (no foreign keys) written directly or by a setter
+    boolean isBound(int field);
+
+    // columns[field] is the index of the field's column in the row
+    void bind(ResultSet rs, int[] columns, T tuple) throws SQLException;
+
+    // attributes having a setX(...) method, in field order
+    String[] modifiable();
+
+    // false if the setter isn't callable from the model's package
+    boolean callSetter(T tuple, String attribute, Object value);
+
+    String createTable();
+
+    String insertTemplate();
+
+    // getInt()/getDouble() read NULL as 0, used by bind() for nullable columns only
+
+    static Integer getInteger(ResultSet rs, int col) throws SQLException {
+        int value = rs.getInt(col);
+        return value == 0 && rs.wasNull() ? null : value;
+    }
+
+    static Double getDouble(ResultSet rs, int col) throws SQLException {
+        double value = rs.getDouble(col);
+        return value == 0 && rs.wasNull() ? null : value;
+    }
+}
@@ -0,0 +1,62 @@
+package orm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// One instance per (model, id) for as long as the scope is open. Every search opens one for
+// the foreign keys it resolves; opening one explicitly stretches it over several searches:
+//
+//     try (var session = IdentityMap.open()) { ... }
+//
+// Rows already in the map are not read again, so changes made by others in between aren't seen
+public class IdentityMap implements AutoCloseable {
+
+    private static final ThreadLocal<IdentityMap> current = new ThreadLocal<>();
+
+    private final Map<Class<? extends Table>,Map<Integer,Table>> tuples = new HashMap<>();
+    private int depth = 0;
+
+    private IdentityMap() {}
+
+    // joins the scope already open on this thread if there's one
+    public static IdentityMap open() {
+
+        IdentityMap map = current.get();
+        if (map == null) {
+            map = new IdentityMap();
+            current.set(map);
+        }
+
+        map.depth++;
+        return map;
+    }
+
+    static IdentityMap current() {
+        return current.get();
+    }
+
+    @Override
+    public void close() {
+        if (--depth == 0) {
+            current.remove();
+        }
+    }
+
+    Table get(Class<? extends Table> model, Integer id) {
+        var byId = tuples.get(model);
+        return byId == null ? null : byId.get(id);
+    }
+
+    void put(Table tuple) {
+        if (tuple.getId() != null) {
+            tuples.computeIfAbsent(tuple.getClass(), _ -> new HashMap<>()).putIfAbsent(tuple.getId(), tuple);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (var byId : tuples.values()) {
+            size += byId.size();
+        } return size;
+    }
+}
@@ -0,0 +1,301 @@
+package orm;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import static orm.SQLiteQueryConstructor.DataDefinition.createTable;
+import static orm.SQLiteQueryConstructor.DataDefinition.insertTemplate;
+
+// Generates a <Model>_Mapper (see GeneratedMapper) next to every model having @Constraints fields:
+// field reads and writes, a row binding by column index, setter calls and its SQL rendered at compile time.
+// It's registered in META-INF/services, from JDK 23 on javac only runs it when asked to
+// (-proc:full, or the orm artifact in the compiler plugin's annotationProcessorPaths)
+@SupportedAnnotationTypes("orm.Constraints")
+public class MapperProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+
+        TypeElement table = processingEnv.getElementUtils().getTypeElement(Table.class.getName());
+        if (table == null) {
+            return false;
+        }
+
+        Set<TypeElement> models = new LinkedHashSet<>();
+        for (Element field : round.getElementsAnnotatedWith(Constraints.class)) {
+            if (field.getEnclosingElement() instanceof TypeElement model && isModel(model, table)) {
+                models.add(model);
+            }
+        }
+
+        for (TypeElement model : models) {
+            generate(model, table);
+        }
+
+        return false;
+    }
+
+    private boolean isModel(TypeElement model, TypeElement table) {
+        return model.getNestingKind() == NestingKind.TOP_LEVEL
+            && !model.getModifiers().contains(Modifier.ABSTRACT)
+            && processingEnv.getTypeUtils().isSubtype(model.asType(), table.asType());
+    }
+
+    private void generate(TypeElement model, TypeElement table) {
+
+        // same order as Reflection's effective fields: the id, then the model's own fields
+        List<VariableElement> fields = new ArrayList<>();
+        fields.add(fieldNamed(table, "id"));
+        for (VariableElement field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+            if (!field.getModifiers().contains(Modifier.STATIC)) {
+                fields.add(field);
+            }
+        }
+
+        int count = fields.size();
+        String[] names = new String[count];
+        Constraints[] constraints = new Constraints[count];
+
+        for (int i=0;i<count;i++) {
+            names[i] = fields.get(i).getSimpleName().toString();
+            constraints[i] = fields.get(i).getAnnotation(Constraints.class);
+            if (constraints[i] == null) {
+                skip(model, String.format("the field %s has no @Constraints", names[i]));
+                return;
+            }
+        }
+
+        if (!hasDefaultConstructor(model)) {
+            skip(model, "no accessible constructor without arguments");
+            return;
+        }
+
+        String modelName = model.getSimpleName().toString();
+        String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        String mapperName = modelName + "_Mapper";
+        String tableName = SQLiteQueryConstructor.tableName(modelName);
+
+        StringBuilder fieldNames = new StringBuilder(), fieldTypes = new StringBuilder(), fieldConstraints = new StringBuilder();
+        StringBuilder accessible = new StringBuilder(), bound = new StringBuilder();
+        StringBuilder getters = new StringBuilder(), setters = new StringBuilder(), bindings = new StringBuilder();
+        StringBuilder modifiable = new StringBuilder(), setterCalls = new StringBuilder();
+
+        for (int i=0;i<count;i++) {
+
+            VariableElement field = fields.get(i);
+            TypeMirror type = processingEnv.getTypeUtils().erasure(field.asType());
+
+            // private fields go through a getter and a setter of their own type
+            boolean direct = i > 0 && !field.getModifiers().contains(Modifier.PRIVATE);
+            ExecutableElement getter = i == 0 || direct ? null : getterOf(model, field);
+            ExecutableElement exactSetter = i == 0 || direct ? null : setterOf(model, field, type);
+            boolean isAccessible = direct || (isCallable(getter) && isCallable(exactSetter));
+
+            fieldNames.append((i == 0 ? "" : ", ") + literal(names[i]));
+            fieldTypes.append((i == 0 ? "" : ", ") + type + ".class");
+            fieldConstraints.append((i == 0 ? "" : ",\n        ") + literal(Reflection.signatureOf(constraints[i])));
+            accessible.append((i == 0 ? "" : ", ") + isAccessible);
+
+            if (isAccessible) {
+                String cast = castType(field.asType());
+                getters.append(direct
+                    ? String.format("            case %s: return tuple.%s;%n", i, names[i])
+                    : String.format("            case %s: return tuple.%s();%n", i, getter.getSimpleName()));
+                setters.append(direct
+                    ? String.format("            case %s: tuple.%s = (%s) value; return;%n", i, names[i], cast)
+                    : String.format("            case %s: tuple.%s((%s) value); return;%n", i, exactSetter.getSimpleName(), cast));
+            }
+
+            ExecutableElement setter = i == 0 ? null : setterOf(model, field);
+
+            String binding = i == 0 || constraints[i].foreignKey() ? null : bindingOf(field, direct, setter, constraints[i].nullable(), i);
+            bound.append((i == 0 ? "" : ", ") + (binding != null));
+            if (binding != null) {
+                bindings.append(binding);
+            }
+
+            if (setter == null) {
+                continue;
+            }
+
+            modifiable.append((modifiable.length() == 0 ? "" : ", ") + literal(names[i]));
+            if (isCallable(setter)) {
+                String cast = castType(setter.getParameters().get(0).asType());
+                setterCalls.append(String.format(
+                    "            case %s: tuple.%s((%s) value); return true;%n", literal(names[i]), setter.getSimpleName(), cast
+                ));
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package " + packageName + ";\n\n");
+        }
+        source
+            .append("@javax.annotation.processing.Generated(\"" + MapperProcessor.class.getName() + "\")\n")
+            .append("@SuppressWarnings(\"unchecked\")\n")
+            .append("public final class " + mapperName + " implements orm.GeneratedMapper<" + modelName + "> {\n\n")
+            .append("    private static final String[] FIELDS = {" + fieldNames + "};\n")
+            .append("    private static final Class<?>[] TYPES = {" + fieldTypes + "};\n")
+            .append("    private static final String[] CONSTRAINTS = {\n        " + fieldConstraints + "\n    };\n")
+            .append("    private static final boolean[] ACCESSIBLE = {" + accessible + "};\n")
+            .append("    private static final boolean[] BOUND = {" + bound + "};\n")
+            .append("    private static final String[] MODIFIABLE = {" + modifiable + "};\n\n")
+            .append("    public String[] fieldNames() {\n        return FIELDS.clone();\n    }\n\n")
+            .append("    public Class<?>[] fieldTypes() {\n        return TYPES.clone();\n    }\n\n")
+            .append("    public String[] fieldConstraints() {\n        return CONSTRAINTS.clone();\n    }\n\n")
+            .append("    public boolean isAccessible(int field) {\n        return ACCESSIBLE[field];\n    }\n\n")
+            .append("    public " + modelName + " newInstance() {\n        return new " + modelName + "();\n    }\n\n")
+            .append("    public Object get(" + modelName + " tuple, int field) {\n        switch (field) {\n")
+            .append(getters)
+            .append("            default: throw new IllegalArgumentException(\"Not directly accessible: \" + FIELDS[field]);\n        }\n    }\n\n")
+            .append("    public void set(" + modelName + " tuple, int field, Object value) {\n        switch (field) {\n")
+            .append(setters)
+            .append("            default: throw new IllegalArgumentException(\"Not directly accessible: \" + FIELDS[field]);\n        }\n    }\n\n")
+            .append("    public boolean isBound(int field) {\n        return BOUND[field];\n    }\n\n")
+            .append("    public void bind(java.sql.ResultSet rs, int[] columns, " + modelName + " tuple) throws java.sql.SQLException {\n")
+            .append(bindings)
+            .append("    }\n\n")
+            .append("    public String[] modifiable() {\n        return MODIFIABLE.clone();\n    }\n\n")
+            .append("    public boolean callSetter(" + modelName + " tuple, String attribute, Object value) {\n        switch (attribute) {\n")
+            .append(setterCalls)
+            .append("            default: return false;\n        }\n    }\n\n")
+            .append("    public String createTable() {\n        return " + literal(createTable(tableName, names, constraints)) + ";\n    }\n\n")
+            .append("    public String insertTemplate() {\n        return " + literal(insertTemplate(tableName, names, constraints)) + ";\n    }\n")
+            .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, model).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Couldn't write " + qualifiedName + ": " + e, model);
+        }
+    }
+
+    // the setter Reflection would find: setX(...) taking the field's visible type (String for dates)
+    private ExecutableElement setterOf(TypeElement model, VariableElement field) {
+
+        TypeMirror visibleType = processingEnv.getTypeUtils().erasure(field.asType());
+        if (visibleType.toString().equals("java.time.LocalDate")) {
+            visibleType = processingEnv.getElementUtils().getTypeElement("java.lang.String").asType();
+        } return setterOf(model, field, visibleType);
+    }
+
+    private ExecutableElement setterOf(TypeElement model, VariableElement field, TypeMirror parameterType) {
+
+        var types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(model.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(accessorName("set", field))
+                && !method.getModifiers().contains(Modifier.STATIC)
+                && method.getParameters().size() == 1
+                && types.isSameType(types.erasure(method.getParameters().get(0).asType()), parameterType)) {
+                return method;
+            }
+        } return null;
+    }
+
+    // getX() returning the field's own type
+    private ExecutableElement getterOf(TypeElement model, VariableElement field) {
+
+        var types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(model.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(accessorName("get", field))
+                && !method.getModifiers().contains(Modifier.STATIC)
+                && method.getParameters().isEmpty()
+                && types.isSameType(types.erasure(method.getReturnType()), types.erasure(field.asType()))) {
+                return method;
+            }
+        } return null;
+    }
+
+    // The statement reading the field from its column, null if it's left to the RowMapper: a type without
+    // a typed getter here, or a private field without a setter. Dates are handed to a setter as Strings
+    private String bindingOf(VariableElement field, boolean direct, ExecutableElement setter, boolean nullable, int i) {
+
+        String col = "columns[" + i + "]";
+        String type = processingEnv.getTypeUtils().erasure(field.asType()).toString();
+        String value = switch (type) {
+            case "int" -> "rs.getInt(" + col + ")";
+            case "double" -> "rs.getDouble(" + col + ")";
+            case "java.lang.Integer" -> nullable ? "orm.GeneratedMapper.getInteger(rs, " + col + ")" : "rs.getInt(" + col + ")";
+            case "java.lang.Double" -> nullable ? "orm.GeneratedMapper.getDouble(rs, " + col + ")" : "rs.getDouble(" + col + ")";
+            case "java.lang.String" -> "rs.getString(" + col + ")";
+            case "java.time.LocalDate" -> direct ? "orm.Table.stringToDate(rs.getString(" + col + "))" : "rs.getString(" + col + ")";
+            default -> null;
+        };
+
+        if (value == null) {
+            return null;
+        } else if (direct) {
+            return String.format("        tuple.%s = %s;%n", field.getSimpleName(), value);
+        } else if (isCallable(setter)) {
+            return String.format("        tuple.%s(%s);%n", setter.getSimpleName(), value);
+        } return null;
+    }
+
+    // callable from the generated mapper, in the model's package
+    private static boolean isCallable(ExecutableElement method) {
+        return method != null && !method.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    private static String accessorName(String prefix, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        return prefix + name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
+    private boolean hasDefaultConstructor(TypeElement model) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        } return false;
+    }
+
+    private VariableElement fieldNamed(TypeElement type, String name) {
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getSimpleName().contentEquals(name)) {
+                return field;
+            }
+        } throw new IllegalStateException(String.format("No field %s in %s!", name, type));
+    }
+
+    private String castType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        } return type.toString();
+    }
+
+    private void skip(TypeElement model, String reason) {
+        String s = "No mapper generated for %s (%s), it will be mapped through reflection";
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, String.format(s, model.getSimpleName(), reason), model);
+    }
+
+    private static String literal(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,328 @@
+package orm;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import orm.Reflection.FieldInfos;
+
+// Optional cache of search results, shared by every thread and enabled model by model:
+//
+//     QueryCache.enable(Vehicle.class, 500, Duration.ofMinutes(10));
+//
+// Entries are keyed by the query template and its bound values, evicted when the least
+// recently used past maxEntries or older than the ttl, and dropped on any write to the model
+// or to a model it aggregates. A hit gives copies of the cached tuples, the rows already in the caller's
+// identity map (see IdentityMap) being given as those instances.
+// The values of enumerated attributes (see Table.getAttributeValues()) are always cached, whether the model
+// has a region or not: a handful of small sets per model, dropped by any write to the model itself
+public class QueryCache {
+
+    private static final Map<Class<? extends Table>,Region> regions = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends Table>,Set<Class<? extends Table>>> dependents = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends Table>,AttributeValues> attributeValues = new ConcurrentHashMap<>();
+
+    public static void enable(Class<? extends Table> model, int maxEntries, Duration ttl) {
+
+        if (maxEntries < 1 || ttl == null || ttl.isNegative() || ttl.isZero()) {
+            String s = "Invalid query cache configuration for %s: (maxEntries, ttl) = (%s, %s)";
+            throw new IllegalArgumentException(String.format(s, model.getSimpleName(), maxEntries, ttl));
+        }
+
+        regions.put(model, new Region(maxEntries, ttl.toNanos()));
+    }
+
+    public static void disable(Class<? extends Table> model) {
+        regions.remove(model);
+    }
+
+    public static boolean isEnabled(Class<? extends Table> model) {
+        return regions.containsKey(model);
+    }
+
+    public static Stats stats(Class<? extends Table> model) {
+        Region region = regions.get(model);
+        return region == null ? null : region.stats();
+    }
+
+    // null on a miss, or when the cache can't be trusted (inside a transaction)
+    static Vector<Table> get(Class<? extends Table> model, String template, Vector<Object> values, Fetch fetch) {
+
+        Region region = regions.get(model);
+        if (region == null || Transaction.isActive()) {
+            return null;
+        }
+
+        List<Table> tuples = region.get(new Key(template, keyValues(values), fetch));
+        if (tuples == null) {
+            return null;
+        }
+
+        IdentityMap identities = IdentityMap.current();
+        Map<Table,Table> copies = new IdentityHashMap<>();
+        Vector<Table> found = new Vector<>(tuples.size());
+        for (Table tuple : tuples) {
+            found.add(copyOf(tuple, identities, copies));
+        } return found;
+    }
+
+    // read before querying the database, so a result racing with a write isn't stored
+    static long generation(Class<? extends Table> model) {
+        Region region = regions.get(model);
+        return region == null ? 0 : region.generation();
+    }
+
+    static void put(Class<? extends Table> model, String template, Vector<Object> values, Fetch fetch, Vector<Table> tuples, long generation) {
+
+        Region region = regions.get(model);
+        if (region == null || Transaction.isActive()) {
+            return;
+        }
+
+        // the caller keeps its own instances, free to change them
+        Map<Table,Table> copies = new IdentityHashMap<>();
+        List<Table> stored = new ArrayList<>(tuples.size());
+        for (Table tuple : tuples) {
+            stored.add(copyOf(tuple, null, copies));
+        }
+
+        region.put(new Key(template, keyValues(values), fetch), Collections.unmodifiableList(stored), generation);
+    }
+
+    // Copies a tuple and the tuples it aggregates, each one once, taking those already in the identity map
+    // from it and adding it the others. Lazy references stay unloaded, or point to the copy of their tuple
+    private static Table copyOf(Table tuple, IdentityMap identities, Map<Table,Table> copies) {
+
+        Table copy = copies.get(tuple);
+        if (copy != null) {
+            return copy;
+        }
+
+        var model = tuple.getClass();
+        if (identities != null && (copy = identities.get(model, tuple.getId())) != null) {
+            copies.put(tuple, copy);
+            return copy;
+        }
+
+        FieldInfos fields = Reflection.fieldsOf(model);
+        copy = Reflection.getModelInstance(model);
+        copies.put(tuple, copy);
+
+        for (int i=0;i<fields.count;i++) {
+            Object value = fields.get(tuple, i);
+            if (value instanceof Table aggregated) {
+                value = copyOf(aggregated, identities, copies);
+            } else if (value instanceof Ref<?> ref && ref.isLoaded()) {
+                value = Ref.to(copyOf(ref.get(), identities, copies));
+            } else if (value instanceof Ref<?> ref) {
+                value = Ref.of(ref.getModel(), ref.getId());
+            }
+            fields.set(copy, i, value);
+        }
+
+        if (identities != null) {
+            identities.put(copy);
+        } return copy;
+    }
+
+    // null on a miss, or inside a transaction
+    static Set<String> attributeValues(Class<? extends Table> model, String attributeName) {
+        if (Transaction.isActive()) {
+            return null;
+        } return attributeValuesOf(model).get(attributeName);
+    }
+
+    // read before querying the database, like generation()
+    static long attributeValuesGeneration(Class<? extends Table> model) {
+        return attributeValuesOf(model).generation();
+    }
+
+    static void putAttributeValues(Class<? extends Table> model, String attributeName, Set<String> values, long generation) {
+        if (!Transaction.isActive()) {
+            attributeValuesOf(model).put(attributeName, Collections.unmodifiableSet(new HashSet<>(values)), generation);
+        }
+    }
+
+    private static AttributeValues attributeValuesOf(Class<? extends Table> model) {
+        return attributeValues.computeIfAbsent(model, _ -> new AttributeValues());
+    }
+
+    // drops the model's entries and those of every model aggregating it, directly or not
+    static void invalidate(Class<? extends Table> model) {
+
+        Transaction.written(model);
+
+        // only the model's own columns hold its attribute values
+        AttributeValues values = attributeValues.get(model);
+        if (values != null) {
+            values.clear();
+        }
+
+        if (regions.isEmpty()) {
+            return;
+        }
+
+        for (var dependent : dependentsOf(model)) {
+            Region region = regions.get(dependent);
+            if (region != null) {
+                region.clear();
+            }
+        }
+    }
+
+    // a new model can aggregate any of the known ones
+    static void modelRegistered() {
+        dependents.clear();
+    }
+
+    static Set<Class<? extends Table>> dependentsOf(Class<? extends Table> model) {
+        return dependents.computeIfAbsent(model, _ -> {
+
+            Set<Class<? extends Table>> found = new HashSet<>();
+            List<Class<? extends Table>> pending = new ArrayList<>(List.of(model));
+
+            while (!pending.isEmpty()) {
+                var current = pending.remove(pending.size() - 1);
+                if (!found.add(current)) {
+                    continue;
+                }
+                for (var candidate : Table.getModels()) {
+                    for (Class<?> referenced : Reflection.fieldsOf(candidate).referenced) {
+                        if (current.equals(referenced)) {
+                            pending.add(candidate);
+                        }
+                    }
+                }
+            } return Set.copyOf(found);
+        });
+    }
+
+    // tuples are keyed by their id, they don't define hashCode()
+    private static List<Object> keyValues(Vector<Object> values) {
+        List<Object> keys = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value instanceof Table tuple) {
+                keys.add(tuple.getId());
+            } else if (value instanceof Ref<?> ref) {
+                keys.add(ref.getId());
+            } else {
+                keys.add(value);
+            }
+        } return keys;
+    }
+
+    private record Key(String template, List<Object> values, Fetch fetch) {}
+
+    private record Entry(List<Table> tuples, long storedAt) {}
+
+    public record Stats(long hits, long misses, long evictions, long invalidations, int size) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            String s = "Query cache: %s entries, %s hits, %s misses (%.1f%%), %s evictions, %s invalidations";
+            return String.format(s, size, hits, misses, 100 * hitRate(), evictions, invalidations);
+        }
+    }
+
+    private static class Region {
+
+        private final long ttl;
+        private final LinkedHashMap<Key,Entry> entries;
+        private long hits, misses, evictions, invalidations, generation;
+
+        Region(int maxEntries, long ttl) {
+            this.ttl = ttl;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+                    if (size() <= maxEntries) {
+                        return false;
+                    }
+                    evictions++;
+                    return true;
+                }
+            };
+        }
+
+        synchronized List<Table> get(Key key) {
+
+            Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.storedAt() > ttl) {
+                entries.remove(key);
+                evictions++;
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+
+            hits++;
+            return entry.tuples();
+        }
+
+        synchronized void put(Key key, List<Table> tuples, long readAt) {
+            if (readAt == generation) {
+                entries.put(key, new Entry(tuples, System.nanoTime()));
+            }
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void clear() {
+            generation++;
+            if (!entries.isEmpty()) {
+                entries.clear();
+                invalidations++;
+            }
+        }
+
+        synchronized Stats stats() {
+            return new Stats(hits, misses, evictions, invalidations, entries.size());
+        }
+    }
+
+    // one small set per enumerated attribute, nothing to evict: a write drops them all
+    private static class AttributeValues {
+
+        private final Map<String,Set<String>> sets = new HashMap<>();
+        private long generation;
+
+        synchronized Set<String> get(String attributeName) {
+            return sets.get(attributeName);
+        }
+
+        synchronized void put(String attributeName, Set<String> values, long readAt) {
+            if (readAt == generation) {
+                sets.put(attributeName, values);
+            }
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void clear() {
+            generation++;
+            sets.clear();
+        }
+    }
+}
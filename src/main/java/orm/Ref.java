@@ -0,0 +1,94 @@
+package orm;
+
+import java.util.Objects;
+import java.util.Vector;
+
+import static orm.Reflection.getModelInstance;
+
+// Lazy reference to a tuple of another model. Declaring an aggregation as a Ref<Model>
+// instead of a Model makes searches fill it with the id only, the row is loaded on the first get()
+public final class Ref<T extends Table> {
+
+    private final Class<T> model;
+    private final Integer id;
+    private T tuple;
+
+    private Ref(Class<T> model, Integer id, T tuple) {
+        this.model = model;
+        this.id = id;
+        this.tuple = tuple;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Table> Ref<T> to(T tuple) {
+        if (tuple == null) {
+            return null;
+        } return new Ref<>((Class<T>) tuple.getClass(), tuple.getId(), tuple);
+    }
+
+    static <T extends Table> Ref<T> of(Class<T> model, int id) {
+        return new Ref<>(model, id, null);
+    }
+
+    public Integer getId() {
+        return tuple != null ? tuple.getId() : id;
+    }
+
+    public Class<T> getModel() {
+        return model;
+    }
+
+    public boolean isLoaded() {
+        return tuple != null;
+    }
+
+    public T get() {
+
+        if (tuple != null) {
+            return tuple;
+        }
+
+        IdentityMap identities = IdentityMap.current();
+        if (identities != null && identities.get(model, id) != null) {
+            tuple = model.cast(identities.get(model, id));
+            return tuple;
+        }
+
+        Table criteria = getModelInstance(model);
+        criteria.id = id;
+
+        Vector<Table> found = Table.search(criteria);
+        if (found.size() == 0) {
+            String s = "Dangling reference: no %s with the id %s!";
+            throw new IllegalStateException(String.format(s, model.getSimpleName(), id));
+        }
+
+        tuple = model.cast(found.elementAt(0));
+        return tuple;
+    }
+
+    @Override
+    public String toString() {
+        return tuple != null ? tuple.toString() : model.getSimpleName() + "#" + id;
+    }
+
+    // equal when pointing at the same row, loaded or not
+    @Override
+    public boolean equals(Object obj) {
+
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof Ref<?> ref) || !model.equals(ref.model)) {
+            return false;
+        }
+
+        return getId() != null && getId().equals(ref.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(model, getId());
+    }
+}
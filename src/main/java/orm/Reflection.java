@@ -1,36 +1,56 @@
 package orm;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import orm.util.*;
 import static orm.util.Console.*;
 
 import java.lang.reflect.*;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.io.IOException;
 
 import java.time.LocalDate;
 
 public class Reflection {
 
-    static Map<Class<? extends Table>,FieldInfos> fieldInfos = new HashMap<>();
-    static String qualifiedPackageName = System.getenv("QUALIFIED_PACKAGE_NAME");
+    // computed once per model and shared by all of its instances
+    static final Map<Class<? extends Table>,FieldInfos> fieldInfos = new ConcurrentHashMap<>();
+    static final String qualifiedPackageName = System.getenv("QUALIFIED_PACKAGE_NAME");
+
+    // model names are resolved once, and instances created by factories built once per
+    // model (no arguments) or per constructor signature
+    private static final Map<String,Class<? extends Table>> modelsByName = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends Table>,Supplier<Table>> factories = new ConcurrentHashMap<>();
+    private static final Map<ConstructorKey,MethodHandle> constructors = new ConcurrentHashMap<>();
+
+    private record ConstructorKey(Class<? extends Table> model, List<Class<?>> types) {}
 
     public static void loadModels(String[] modelNames) {
         for (String name : modelNames) {
-            var model = getModel(name);
-            fieldInfos.computeIfAbsent(model, k -> new FieldInfos(k));
+            fieldsOf(getModel(name));
         }
     }
 
+    static FieldInfos fieldsOf(Class<? extends Table> model) {
+        return fieldInfos.computeIfAbsent(model, FieldInfos::new);
+    }
+
     static public FieldInfos fieldsOf(String modelName) {
         if (!Table.hasSubClass(modelName)) {
             String s = "Bad class name: %s";
             throw new IllegalArgumentException(String.format(s, modelName));
-        } return fieldInfos.get(getModel(modelName));
+        } return fieldsOf(getModel(modelName));
     }
 
-    public FieldUtils fields;
-    private Table tuple;
+    public final FieldUtils fields;
+    private final Table tuple;
 
     Reflection(Table tuple) {
         this.tuple = tuple;
@@ -40,11 +60,16 @@ public class Reflection {
     // Creating a model instance
 
     public static Table getModelInstance(String modelName) {
-        return getModelInstance(modelName, new Object[0]);
+        return getModelInstance(getModel(modelName));
+    }
+
+    public static Table getModelInstance(Class<? extends Table> model) {
+        return factories.computeIfAbsent(model, Reflection::factoryOf).get();
     }
 
     public static Table getModelInstance(String modelName, Object[] args) {
-        return (Table) getInstance(getConstructor(getModel(modelName), objectArrayToTypeArray(args)), args);
+        var key = new ConstructorKey(getModel(modelName), List.of(objectArrayToTypeArray(args)));
+        return newInstance(constructors.computeIfAbsent(key, Reflection::constructorOf), args);
     }
 
     private static Class<?>[] objectArrayToTypeArray(Object[] objs) {
@@ -92,8 +117,9 @@ public class Reflection {
 
             Field[] fields = model.getDeclaredFields();
             for (Field field : fields) {
-                if (field.getType().equals(thisModel)) {
+                if (thisModel.equals(referencedModel(field))) {
                     referencerNames.add(model.getSimpleName());
+                    break;
                 }
             }
         }
@@ -108,11 +134,11 @@ public class Reflection {
 
         for (Field relevantField : getReferencingFieldsFrom(referencerName)) {
 
-            Table instanceOfMyself = getModelInstance(tuple.getClass().getSimpleName());
+            Table instanceOfMyself = getModelInstance(tuple.getClass());
             setFieldValue(instanceOfMyself, idField, tuple.getId());
 
-            Table referencer = getModelInstance(referencerName);
-            setFieldValue(referencer, relevantField, instanceOfMyself);
+            Table referencer = getModelInstance(getModel(referencerName));
+            setFieldValue(referencer, relevantField, asFieldValue(relevantField, instanceOfMyself));
 
             referencerCriterias.add(referencer);
         }
@@ -123,94 +149,188 @@ public class Reflection {
     private List<Field> getReferencingFieldsFrom(String modelName) {
         List<Field> referencingFields = new ArrayList<>();
         for (Field field : getModel(modelName).getDeclaredFields()) {
-            if (field.getType().equals(tuple.getClass())) {
+            if (tuple.getClass().equals(referencedModel(field))) {
                 referencingFields.add(field);
             }
         } return referencingFields;
     }
 
-    // Default-valued instance methods
+    // the model a field aggregates, either directly or through a lazy Ref<Model>, null if it's an attribute
+    @SuppressWarnings("unchecked")
+    static Class<? extends Table> referencedModel(Field field) {
+
+        if (Table.class.isAssignableFrom(field.getType())) {
+            return (Class<? extends Table>) field.getType();
+        }
+
+        if (field.getType().equals(Ref.class)
+            && field.getGenericType() instanceof ParameterizedType generic
+            && generic.getActualTypeArguments()[0] instanceof Class<?> model
+            && Table.class.isAssignableFrom(model)) {
+            return (Class<? extends Table>) model;
+        }
 
-    private Table setFieldValue(Field field, Object value) {
-        return setFieldValue(tuple, field, value);
+        return null;
     }
 
-    private Object getFieldValue(Field field) {
-        return getFieldValue(tuple, field);
+    // a tuple given for a Ref<Model> field gets wrapped
+    static private Object asFieldValue(Field field, Object value) {
+        if (value instanceof Table tuple && field.getType().equals(Ref.class)) {
+            return Ref.to(tuple);
+        } return value;
     }
 
     // Primary methods
 
-    static private boolean hasSetter(Class<?> model, String attribute, Class<?> attType) {
-        try {
-            String method = "set" + attribute.substring(0, 1).toUpperCase() + attribute.substring(1);
-            model.getDeclaredMethod(method, attType);
-            return true;
-        } catch (NoSuchMethodException e) {
-            return false;
+    static private Table setFieldValue(Table tuple, Field field, Object value) {
+        Accessors.of(tuple.getClass()).set(tuple, field.getName(), value);
+        return tuple;
+    }
+
+    // the id first, then the model's own non-static fields
+    static private Field[] effectiveFields(Class<?> model) {
+
+        List<Field> effectiveFields = new ArrayList<>();
+        effectiveFields.add(Reflection.getField(Table.class, "id"));
+        for (var field : model.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                effectiveFields.add(field);
+            }
         }
+
+        return effectiveFields.toArray(Field[]::new);
     }
 
-    static private Method getSetter(Table tuple, String attribute) {
+    // dates are set through their String representation
+    static private Class<?> visibleType(Class<?> type) {
+        return type.equals(LocalDate.class) ? String.class : type;
+    }
+
+    // the mapper generated at compile time if there's one, ignored if the class changed since
+    @SuppressWarnings("unchecked")
+    static private GeneratedMapper<Table> generatedMapperOf(Class<? extends Table> model, String[] names, Class<?>[] types, Constraints[] constraints) {
         try {
-            String method = "set" + attribute.substring(0, 1).toUpperCase() + attribute.substring(1);
-            Class<?> attType = tuple.reflect.fields.visibleTypeOf(attribute);
-            return tuple.getClass().getDeclaredMethod(method, attType);
-        } catch (NoSuchMethodException e) {
+            Class<?> mapperClass = Class.forName(model.getName() + "_Mapper", true, model.getClassLoader());
+            if (!GeneratedMapper.class.isAssignableFrom(mapperClass)) {
+                return null;
+            }
+
+            var mapper = (GeneratedMapper<Table>) mapperClass.getConstructor().newInstance();
+            if (!isUpToDate(mapper, names, types, constraints)) {
+                error("Outdated generated mapper for %s, using reflection instead", model.getSimpleName());
+                return null;
+            } return mapper;
+
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
             error(e);
-            throw new BugDetectedException("Bad Reflection Argument!");
+            return null;
         }
     }
 
-    static private Object invoke(Method method, Table tuple, Object... args) {
+    // same fields, in the same order, of the same (erased) types and with the same constraints, its SQL
+    // depends on them. Mappers generated before fieldTypes() or fieldConstraints() existed are outdated too
+    static boolean isUpToDate(GeneratedMapper<?> mapper, String[] names, Class<?>[] types, Constraints[] constraints) {
+
+        String[] signatures = new String[constraints.length];
+        for (int i=0;i<constraints.length;i++) {
+            signatures[i] = signatureOf(constraints[i]);
+        }
+
         try {
-            method.setAccessible(true);
-            return method.invoke(tuple, args);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            error(e);
-            throw new BugDetectedException("Bad Reflection Argument!");
+            return Arrays.equals(mapper.fieldNames(), names)
+                && Arrays.equals(mapper.fieldTypes(), types)
+                && Arrays.equals(mapper.fieldConstraints(), signatures);
+        } catch (AbstractMethodError e) {
+            return false;
         }
     }
 
-    static private Table setFieldValue(Table tuple, Field field, Object value) {
+    // Every value of the annotation, defaults included, by element name. MapperProcessor renders
+    // the compile time ones the same way
+    static String signatureOf(Constraints constraints) {
+
+        Method[] elements = Constraints.class.getDeclaredMethods();
+        Arrays.sort(elements, Comparator.comparing(Method::getName));
+
+        StringJoiner signature = new StringJoiner(", ");
+        for (Method element : elements) {
+            try {
+                signature.add(element.getName() + "=" + element.invoke(constraints));
+            } catch (ReflectiveOperationException e) {
+                error(e);
+                throw new BugDetectedException("Bad Reflection Argument!");
+            }
+        } return signature.toString();
+    }
+
+    static private Field getField(Class<?> model, String fieldName) {
         try {
-            field.setAccessible(true);
-            field.set(tuple, value);
-        } catch (IllegalAccessException e) {
+            return model.getDeclaredField(fieldName);
+        } catch (NoSuchFieldException e) {
             error(e);
             throw new BugDetectedException("Bad Reflection Argument!");
-        } return tuple;
+        }
     }
 
-    static private Object getFieldValue(Table tuple, Field field) {
+    // the generated mapper if there's one, otherwise a lambda spun around the constructor
+    @SuppressWarnings("unchecked")
+    static private Supplier<Table> factoryOf(Class<? extends Table> model) {
+
+        var mapper = fieldsOf(model).mapper;
+        if (mapper != null) {
+            return mapper::newInstance;
+        }
+
+        MethodHandles.Lookup lookup;
+        MethodHandle constructor;
         try {
-            field.setAccessible(true);
-            return field.get(tuple);
-        } catch (IllegalAccessException e) {
+            lookup = MethodHandles.privateLookupIn(model, MethodHandles.lookup());
+            constructor = lookup.findConstructor(model, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
             error(e);
             throw new BugDetectedException("Bad Reflection Argument!");
         }
+
+        try {
+            var site = LambdaMetafactory.metafactory(
+                lookup, "get", MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class), constructor, MethodType.methodType(model)
+            );
+            return (Supplier<Table>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            // e.g. a model loaded by another class loader, the handle is still fine
+            MethodHandle spread = constructor.asType(MethodType.methodType(Table.class)).asSpreader(Object[].class, 0);
+            return () -> newInstance(spread, new Object[0]);
+        }
     }
 
-    static private Field getField(Class<?> model, String fieldName) {
+    // adapted to (Object[])Table so every signature is invoked the same way
+    static private MethodHandle constructorOf(ConstructorKey key) {
         try {
-            return model.getDeclaredField(fieldName);
-        } catch (NoSuchFieldException e) {
+            Constructor<?> constructor = getConstructor(key.model(), key.types().toArray(Class<?>[]::new));
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                .asSpreader(Object[].class, key.types().size())
+                .asType(MethodType.methodType(Table.class, Object[].class));
+        } catch (IllegalAccessException e) {
             error(e);
             throw new BugDetectedException("Bad Reflection Argument!");
         }
     }
 
-    static private Table getInstance(Constructor<?> constructor, Object[] args) {
+    static private Table newInstance(MethodHandle constructor, Object[] args) {
         try {
-            return (Table) constructor.newInstance(args);
-        } catch (InvocationTargetException e) {
-            error(e, "Cause of InvocationTargetException: %s", e.getCause());
+            return (Table) constructor.invokeExact(args);
+        } catch (Error e) {
+            throw e;
+        } catch (Exception e) {
+            error(e, "Cause of the failed instantiation: %s", e);
             throw new BugDetectedException("Bad Reflection Argument!");
-        } catch (IllegalAccessException | InstantiationException e) {
-            error(e);
-            throw new BugDetectedException("Bad Reflection Argument!");
-        } 
+        } catch (Throwable e) {
+            // neither an Error nor an Exception, Console can't report it
+            throw new BugDetectedException("Bad Reflection Argument!", e);
+        }
     }
 
     static private Constructor<?> getConstructor(Class<?> model, Class<?>[] types) {
@@ -223,57 +343,293 @@ public class Reflection {
     }
 
     @SuppressWarnings("unchecked")
-    static private Class<? extends Table> getModel(String modelName) {
+    static Class<? extends Table> getModel(String modelName) {
+
+        var model = modelsByName.get(modelName);
+        if (model != null) {
+            return model;
+        }
+
         try {
-            return (Class<? extends Table>) Class.forName(qualifiedPackageName + modelName);
+            model = (Class<? extends Table>) Class.forName(qualifiedPackageName + modelName);
         } catch (ClassNotFoundException e) {
             error(e);
             throw new BugDetectedException(String.format("Wrong model name: %s", modelName));
         }
+
+        modelsByName.put(modelName, model);
+        return model;
+    }
+
+    // Fields and setters accessed through method handles built once per model, instead of
+    // setAccessible() + Field.get/set on every access and a getDeclaredMethod() per setter call.
+    // Each field's handles sit in static finals of their own hidden class (see FieldAccessor),
+    // a handle invoked from an array or an instance field couldn't be inlined
+    static final class Accessors {
+
+        private static final Map<Class<?>,Accessors> byModel = new ConcurrentHashMap<>();
+
+        private static final MethodType GETTER = MethodType.methodType(Object.class, Table.class);
+        private static final MethodType SETTER = MethodType.methodType(void.class, Table.class, Object.class);
+
+        private final Map<String,Integer> indexOf = new HashMap<>();
+        private final Map<String,MethodHandle> setterMethods = new HashMap<>();
+        private final Map<String,Class<?>> setterTypes = new HashMap<>();
+        private final FieldAccess[] access;
+        private final Class<?>[] types;
+        private final String[] names;
+
+        // setters taking the primitive itself, only for int and double fields
+        private final MethodHandle[] primitiveSetters;
+
+        interface FieldAccess {
+
+            Object get(Table tuple) throws Throwable;
+
+            void set(Table tuple, Object value) throws Throwable;
+        }
+
+        // without a hidden class, the handles are read from the instance
+        private record Handles(MethodHandle getter, MethodHandle setter) implements FieldAccess {
+
+            @Override
+            public Object get(Table tuple) throws Throwable {
+                return (Object) getter.invokeExact(tuple);
+            }
+
+            @Override
+            public void set(Table tuple, Object value) throws Throwable {
+                setter.invokeExact(tuple, value);
+            }
+        }
+
+        static Accessors of(Class<?> model) {
+            return byModel.computeIfAbsent(model, Accessors::new);
+        }
+
+        private Accessors(Class<?> model) {
+
+            Field[] fields = effectiveFields(model);
+            this.access = new FieldAccess[fields.length];
+            this.types = new Class<?>[fields.length];
+            this.names = new String[fields.length];
+            this.primitiveSetters = new MethodHandle[fields.length];
+
+            try {
+                for (int i=0;i<fields.length;i++) {
+
+                    String name = fields[i].getName();
+                    var lookup = lookupFor(fields[i].getDeclaringClass(), fields[i]);
+
+                    indexOf.put(name, i);
+                    names[i] = name;
+                    types[i] = fields[i].getType();
+                    access[i] = accessOf(lookup.unreflectGetter(fields[i]).asType(GETTER), lookup.unreflectSetter(fields[i]).asType(SETTER));
+                    if (types[i].equals(int.class) || types[i].equals(double.class)) {
+                        primitiveSetters[i] = lookup.unreflectSetter(fields[i]).asType(MethodType.methodType(void.class, Table.class, types[i]));
+                    }
+
+                    String setterName = "set" + name.substring(0, 1).toUpperCase() + name.substring(1);
+                    try {
+                        Method setter = model.getDeclaredMethod(setterName, visibleType(fields[i].getType()));
+                        setterMethods.put(name, lookupFor(model, setter).unreflect(setter).asType(SETTER));
+                        setterTypes.put(name, setter.getParameterTypes()[0]);
+                    } catch (NoSuchMethodException e) {
+                        // read-only attribute
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                error(e);
+                throw new BugDetectedException("Bad Reflection Argument!");
+            }
+        }
+
+        // private lookups work for every model on the class path, setAccessible() is the fallback
+        private static MethodHandles.Lookup lookupFor(Class<?> declaringClass, AccessibleObject member) {
+            try {
+                return MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                member.setAccessible(true);
+                return MethodHandles.lookup();
+            }
+        }
+
+        private static FieldAccess accessOf(MethodHandle getter, MethodHandle setter) {
+
+            byte[] template = Template.BYTES;
+            if (template != null) {
+                try {
+                    var hidden = MethodHandles.lookup().defineHiddenClassWithClassData(template, List.of(getter, setter), true);
+                    return (FieldAccess) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+                } catch (Throwable e) {
+                    error("%s\n\nWhile defining a field accessor, its handles are kept in an instance instead", e);
+                }
+            }
+
+            return new Handles(getter, setter);
+        }
+
+        // FieldAccessor's class file, read once
+        private static final class Template {
+
+            private static final byte[] BYTES = read();
+
+            private static byte[] read() {
+                try (var in = FieldAccessor.class.getResourceAsStream(FieldAccessor.class.getSimpleName() + ".class")) {
+                    return in == null ? null : in.readAllBytes();
+                } catch (IOException e) {
+                    error(e);
+                    return null;
+                }
+            }
+        }
+
+        Object get(Table tuple, int i) {
+            try {
+                return access[i].get(tuple);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        void set(Table tuple, int i, Object value) {
+            checkValue(types[i], value, names[i]);
+            try {
+                access[i].set(tuple, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        FieldWriter writerOf(int i) {
+            FieldAccess field = access[i];
+            return (tuple, value) -> {
+                try {
+                    field.set(tuple, value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+
+        IntWriter intWriterOf(int i) {
+            MethodHandle setter = primitiveSetters[i];
+            return (tuple, value) -> {
+                try {
+                    setter.invokeExact(tuple, value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+
+        DoubleWriter doubleWriterOf(int i) {
+            MethodHandle setter = primitiveSetters[i];
+            return (tuple, value) -> {
+                try {
+                    setter.invokeExact(tuple, value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+
+        Object get(Table tuple, String name) {
+            return get(tuple, indexOf.get(name));
+        }
+
+        void set(Table tuple, String name, Object value) {
+            set(tuple, indexOf.get(name), value);
+        }
+
+        boolean hasSetter(String attribute) {
+            return setterMethods.containsKey(attribute);
+        }
+
+        void callSetter(Table tuple, String attribute, Object value) {
+
+            MethodHandle setter = setterMethods.get(attribute);
+            if (setter == null) {
+                error("No setter for the attribute: %s", attribute);
+                throw new BugDetectedException("Bad Reflection Argument!");
+            }
+
+            checkValue(setterTypes.get(attribute), value, attribute);
+            try {
+                setter.invokeExact(tuple, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        // whatever the field or the setter throws goes through as is
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException r) {
+                return r;
+            } else if (e instanceof Error err) {
+                throw err;
+            }
+            error("%s", e);
+            return new BugDetectedException("Bad Reflection Argument!");
+        }
+    }
+
+    // The only cast made on the way to a field or a setter, the one reported as a bad argument.
+    // A ClassCastException thrown past it comes from the model's own code
+    static void checkValue(Class<?> type, Object value, String attribute) {
+        if (value == null ? type.isPrimitive() : !boxed(type).isInstance(value)) {
+            String s = "Bad Reflection Argument! %s can't be assigned to %s (%s)";
+            throw new IllegalArgumentException(String.format(s, value == null ? null : value.getClass().getName(), attribute, type.getName()));
+        }
+    }
+
+    // Integer for int..., the type itself if it isn't a primitive
+    static Class<?> boxed(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
     }
 
     static public class FieldInfos {
 
-        protected Map<String,List<String>> modifiable = new HashMap<>();
+        protected Map<String,List<String>> modifiable;
         protected Map<String,Field> fieldByName;
+        protected Map<String,Integer> indexByName;
         protected Field[] fields;
 
         public int count;
         public String[] names;
         public Class<?>[] types;
+        public Class<?>[] referenced;
         public Constraints[] constraints;
         public List<String> bounded, discrete;
 
+        final Accessors accessors;
+
+        // null without a generated mapper, 'direct' tells the fields it reads and writes itself
+        final GeneratedMapper<Table> mapper;
+        final boolean[] direct;
+
         Class<? extends Table> model;
         private FieldInfos(Class<? extends Table> model) {
-            this.model = model;
-
-            // Filtering static fields
-            List<Field> filteredModelFields = new ArrayList<>();
-            for (var field : model.getDeclaredFields()) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    filteredModelFields.add(field);
-                }
-            } var modelFields = filteredModelFields.toArray(Field[]::new);
 
-            Field[] effectiveFields = new Field[modelFields.length+1];
-            effectiveFields[0] = Reflection.getField(Table.class, "id");
-            for (int i=0;i<modelFields.length;i++) {
-                effectiveFields[i+1] = modelFields[i];
-            } this.fields = effectiveFields;
+            List<String> bounded = new ArrayList<>(), discrete = new ArrayList<>();
+            this.model = model;
+            this.fields = effectiveFields(model);
+            this.accessors = Accessors.of(model);
 
             this.count = fields.length;
             this.names = new String[count];
             this.types = new Class<?>[count];
-            this.bounded = new ArrayList<>();
-            this.discrete = new ArrayList<>();
+            this.referenced = new Class<?>[count];
+            this.modifiable = new ConcurrentHashMap<>();
             this.fieldByName = new HashMap<>();
+            this.indexByName = new HashMap<>();
             this.constraints = new Constraints[count];
 
             for (int i=0;i<count;i++) {
 
                 names[i] = fields[i].getName();
                 types[i] = fields[i].getType();
+                referenced[i] = referencedModel(fields[i]);
                 constraints[i] = fields[i].getAnnotation(Constraints.class);
                 if (constraints[i] == null) {
                     throw new BugDetectedException(String.format("getAnnotation() return 'null' when called on %s", fields[i]));
@@ -286,17 +642,49 @@ public class Reflection {
                 }
 
                 fieldByName.put(fields[i].getName(), fields[i]);
+                indexByName.put(fields[i].getName(), i);
             }
+
+            this.bounded = List.copyOf(bounded);
+            this.discrete = List.copyOf(discrete);
+
+            this.mapper = generatedMapperOf(model, names, types, constraints);
+            this.direct = new boolean[count];
+            for (int i=0;i<count;i++) {
+                direct[i] = mapper != null && mapper.isAccessible(i);
+            }
+        }
+
+        // a view over metadata already computed, nothing is scanned nor copied
+        private FieldInfos(FieldInfos shared) {
+            this.model = shared.model;
+            this.fields = shared.fields;
+            this.accessors = shared.accessors;
+            this.modifiable = shared.modifiable;
+            this.fieldByName = shared.fieldByName;
+            this.indexByName = shared.indexByName;
+            this.mapper = shared.mapper;
+            this.direct = shared.direct;
+            this.count = shared.count;
+            this.names = shared.names;
+            this.types = shared.types;
+            this.referenced = shared.referenced;
+            this.constraints = shared.constraints;
+            this.bounded = shared.bounded;
+            this.discrete = shared.discrete;
         }
 
         public List<String> modifiable() {
             return modifiable.computeIfAbsent(model.getSimpleName(), _ -> {
+                if (mapper != null) {
+                    return List.of(mapper.modifiable());
+                }
                 var list = new ArrayList<String>();
                 for (String att : names) {
-                    if (hasSetter(model, att, visibleTypeOf(att))) {
+                    if (accessors.hasSetter(att)) {
                         list.add(att);
                     }
-                } return list;
+                } return List.copyOf(list);
             });
         }
 
@@ -309,6 +697,14 @@ public class Reflection {
             } return fields;
         }
 
+        public int indexOf(String name) {
+            Integer i = indexByName.get(name);
+            if (i == null) {
+                String s = "No attribute %s in the model %s!";
+                throw new IllegalArgumentException(String.format(s, name, model.getSimpleName()));
+            } return i;
+        }
+
         public Constraints constraintsOf(String name) {
             return fieldByName.get(name).getAnnotation(Constraints.class);
         }
@@ -321,36 +717,89 @@ public class Reflection {
             return fieldByName.get(name).getType();
         }
 
+        public boolean isAggregation(int i) {
+            return referenced[i] != null;
+        }
+
+        public boolean isLazy(int i) {
+            return referenced[i] != null && types[i].equals(Ref.class);
+        }
+
         public Class<?> visibleTypeOf(String name) {
-            Class<?> type = typeOf(name);
-            if (type.equals(LocalDate.class)) {
-                type = String.class;
-            } return type;
+            return visibleType(typeOf(name));
         }
+
+        // read and written straight on a tuple of the model, without a Reflection of its own
+
+        public Object get(Table tuple, int i) {
+            return direct[i] ? mapper.get(tuple, i) : accessors.get(tuple, i);
+        }
+
+        public void set(Table tuple, int i, Object value) {
+
+            value = asFieldValue(fields[i], value);
+            if (!direct[i]) {
+                accessors.set(tuple, i, value);
+                return;
+            }
+
+            checkValue(types[i], value, names[i]);
+            mapper.set(tuple, i, value);
+        }
+
+        // for values already of the field's type (row mapping), nothing is wrapped nor checked
+        FieldWriter writerOf(int i) {
+            if (direct[i]) {
+                return (tuple, value) -> mapper.set(tuple, i, value);
+            } return accessors.writerOf(i);
+        }
+
+        // int and double fields only, written without boxing the value
+        IntWriter intWriterOf(int i) {
+            return accessors.intWriterOf(i);
+        }
+
+        DoubleWriter doubleWriterOf(int i) {
+            return accessors.doubleWriterOf(i);
+        }
+    }
+
+    @FunctionalInterface
+    interface FieldWriter {
+        void write(Table tuple, Object value);
+    }
+
+    @FunctionalInterface
+    interface IntWriter {
+        void write(Table tuple, int value);
+    }
+
+    @FunctionalInterface
+    interface DoubleWriter {
+        void write(Table tuple, double value);
     }
 
     public class FieldUtils extends FieldInfos {
 
         private FieldUtils() {
-            super(tuple.getClass());
+            super(fieldsOf(tuple.getClass()));
         }
 
         public Object get(int i) {
-            return getFieldValue(super.fields[i]);
+            return get(tuple, i);
         }
 
         public Object get(String name) {
-            return getFieldValue(fieldByName.get(name));
+            return get(indexOf(name));
         }
 
         public Table set(int i, Object value) {
-            setFieldValue(fields[i], value);
+            set(tuple, i, value);
             return tuple;
         }
 
         public Table set(String name, Object value) {
-            setFieldValue(fieldByName.get(name), value);
-            return tuple;
+            return set(indexOf(name), value);
         }
 
         public Table setDiscrete(String attName, Object value) {
@@ -361,7 +810,14 @@ public class Reflection {
         }
 
         public void callSetter(String attribute, Object value) {
-            invoke(getSetter(tuple, attribute), tuple, value);
+            value = asFieldValue(fieldByName.get(attribute), value);
+            if (mapper != null) {
+                checkValue(visibleType(typeOf(attribute)), value, attribute);
+                if (mapper.callSetter(tuple, attribute, value)) {
+                    return;
+                }
+            }
+            accessors.callSetter(tuple, attribute, value);
         }
     }
 }
@@ -1,105 +1,305 @@
 package orm;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import orm.Constraints;
+import orm.Reflection.FieldInfos;
 import orm.util.Pair;
 import static orm.util.Console.print;
 
+import orm.Table.Aggregate;
+import orm.Table.Page;
 import orm.Table.Range;
 
 class SQLiteQueryConstructor {
 
-    final Table instance;
-    final Vector<Column> columns;
+    private static final Map<Class<? extends Table>,DataDefinition> definitions = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends Table>,SQLiteQueryConstructor> constructors = new ConcurrentHashMap<>();
+
+    final Class<? extends Table> model;
+    final FieldInfos fields;
+    final List<Column> columns;
 
     final String tableName;
     final DataDefinition define;
     final DataManipulation manipulate;
 
-    SQLiteQueryConstructor(Table instance) {
-
-        this.instance = instance;
-        this.tableName = instance.getClass().getSimpleName().toLowerCase() + "s";
+    private SQLiteQueryConstructor(Class<? extends Table> model) {
 
-        this.columns = new Vector<>();
+        this.model = model;
+        this.fields = Reflection.fieldsOf(model);
+        this.define = DataDefinition.of(model);
+        this.tableName = define.tableName;
+        this.columns = define.columns;
 
-        this.define = new DataDefinition();
         this.manipulate = new DataManipulation();
     }
 
-    class DataManipulation {
+    // nothing in it belongs to an instance, the tuples are handed to the statements needing their values
+    static SQLiteQueryConstructor of(Class<? extends Table> model) {
+        return constructors.computeIfAbsent(model, SQLiteQueryConstructor::new);
+    }
 
-        StringBuilder queryString;
-        Vector<Object> queryInputs;
+    static String tableName(String modelName) {
+        return modelName.toLowerCase() + "s";
+    }
+
+    // foreign keys are stored as 'id_<attribute>'
+    static String columnName(String attributeName, Constraints constraints) {
+        return constraints.foreignKey() ? "id_" + attributeName : attributeName;
+    }
 
-        int checkedBoundedCriterias, currentAttribute, i;
-        boolean where, close;
-        Column col;
+    // Nothing is kept between calls: a select collects its values and the shape of its criteria
+    // in one pass, its SQL is rendered once per shape by the DataDefinition
+    class DataManipulation {
 
         private DataManipulation() {}
 
-        void init(String s) {
+        PreparedQuery select(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias) {
+            return select(discreteCriterias, boundedCriterias, null);
+        }
 
-            queryString = new StringBuilder(s);
-            queryInputs = new Vector<>();
-            checkedBoundedCriterias = 0;
-            currentAttribute = 0;
-            where = true;
-            close = false;
+        PreparedQuery select(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Page page) {
+            return select(discreteCriterias, boundedCriterias, page, null);
         }
 
-        PreparedQuery select(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias) {
+        // the same criteria as a select, the rows are aggregated instead of returned
+        PreparedQuery aggregate(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Aggregate<?> aggregate) {
+
+            if (!aggregate.isValidCriteriaFor(fields)) {
+                String s = "Invalid aggregate: %s!";
+                throw new IllegalArgumentException(String.format(s, aggregate));
+            }
+
+            return select(discreteCriterias, boundedCriterias, null, aggregate);
+        }
 
-            init("SELECT * FROM " + tableName);
+        private PreparedQuery select(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Page page, Aggregate<?> aggregate) {
 
-            for (i=0;i<columns.size();i++) {
+            Vector<Object> values = new Vector<>();
+            int[] counts = new int[columns.size()];
+            boolean intervals = define.intervalIndexesReady();
+            boolean fullText = define.fullTextIndexReady();
 
-                col = columns.elementAt(i);
+            // ranges are only checked against models having bounded attributes
+            if (boundedCriterias != null && !fields.bounded.isEmpty()) {
+                for (Range criteria : boundedCriterias) {
+                    if (!criteria.isValidCriteriaFor(fields)) {
+                        String s = "Invalid bounded criteria: %s!";
+                        throw new IllegalArgumentException(String.format(s, criteria));
+                    }
+                }
+            }
 
-                if (col.constraints().upperBound()) {
+            for (int i=0;i<columns.size();i++) {
+
+                Constraints constraints = columns.get(i).constraints();
+                if (constraints.upperBound()) {
                     continue;
                 }
 
-                if (col.constraints().bounded() || col.constraints().lowerBound()) {
-                    appendBoundedCondition(boundedCriterias);
+                if (constraints.bounded() || constraints.lowerBound()) {
+                    counts[i] = bindRanges(columns.get(i), boundedCriterias, values, intervals);
+                } else {
+                    counts[i] = bindDiscrete(i, discreteCriterias, values, fullText);
+                }
+            }
+
+            if (page != null) {
+
+                if (!page.isValidCriteriaFor(fields)) {
+                    String s = "Invalid page: %s!";
+                    throw new IllegalArgumentException(String.format(s, page));
+                }
+
+                if (page.isAfterKey()) {
+                    if (!page.orderBy().equals("id")) {
+                        values.add(page.lastKey());
+                        values.add(page.lastKey());
+                    }
+                    values.add(page.lastId());
+                }
+                values.add(page.size());
+            }
+
+            return new PreparedQuery(define.select(new Shape(counts, page, intervals, fullText, aggregate)), values, define.projection(aggregate));
+        }
+
+        // the words of the text are matched as prefixes, all of them in any of the searchedText
+        // attributes, best matches first
+        PreparedQuery searchText(String text, int limit) {
+
+            if (define.fullTextIndex == null) {
+                String s = "The model %s has no full-text index, see Constraints.fullText()!";
+                throw new IllegalArgumentException(String.format(s, model.getSimpleName()));
+            }
+
+            if (!define.fullTextIndexReady()) {
+                String s = "The full-text index of the model %s couldn't be created!";
+                throw new IllegalStateException(String.format(s, model.getSimpleName()));
+            }
+
+            if (text == null || limit < 1) {
+                String s = "Invalid full-text search: (text, limit) = (%s, %s)";
+                throw new IllegalArgumentException(String.format(s, text, limit));
+            }
+
+            Vector<Object> values = new Vector<>();
+            values.add(match(List.of(text)));
+            values.add(limit);
+
+            return new PreparedQuery(define.searchText(), values, define.searchTextProjection());
+        }
+
+        // an overlap binds its bounds three times, see DataDefinition.appendOverlap(), after the
+        // upper and lower bound probing the interval index if there's one
+        private int bindRanges(Column col, Vector<Range> boundedCriterias, Vector<Object> values, boolean intervals) {
+
+            if (boundedCriterias == null) {
+                return 0;
+            }
+
+            int count = 0;
+            for (Range criteria : boundedCriterias) {
+
+                if (!criteria.attributeName.equals(col.name())) {
+                    continue;
+                }
+
+                if (intervals && DataDefinition.intervalIndexed(col.constraints())) {
+                    Object[] bounds = ordered(criteria.lowerBound(), criteria.upperBound());
+                    values.add(bounds[1]);
+                    values.add(bounds[0]);
+                }
+
+                for (int k=0;k<(col.constraints().lowerBound() ? 3 : 1);k++) {
+                    values.add(criteria.lowerBound());
+                    values.add(criteria.upperBound());
+                }
+                count++;
+            }
+
+            return count;
+        }
+
+        // reversed bounds still overlap what their exact condition matches, see appendOverlap()
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object[] ordered(Object lowerBound, Object upperBound) {
+            if (lowerBound instanceof Comparable bound && bound.compareTo(upperBound) > 0) {
+                return new Object[] {upperBound, lowerBound};
+            } return new Object[] {lowerBound, upperBound};
+        }
+
+        // the first searched text is matched as a prefix of every searchedText attribute, through
+        // the full-text index all the texts are matched at once
+        private int bindDiscrete(int i, Vector<? extends Table> discreteCriterias, Vector<Object> values, boolean fullText) {
+
+            if (fullText && columns.get(i).constraints().searchedText()) {
+                List<String> texts = new ArrayList<>();
+                for (Table criteria : discreteCriterias) {
+                    Object curr = fields.get(criteria, i);
+                    if (curr != null) {
+                        texts.add(String.valueOf(curr));
+                    }
+                }
+                if (!texts.isEmpty()) {
+                    values.add(match(texts));
+                }
+                return texts.size();
+            }
+
+            int count = 0;
+            for (Table criteria : discreteCriterias) {
+
+                Object curr = fields.get(criteria, i);
+                if (curr == null) {
+                    continue;
+                }
+
+                if (count == 0 && columns.get(i).constraints().searchedText()) {
+                    for (int k=0;k<define.searchedText.size();k++) {
+                        values.add(String.valueOf(curr)+"%");
+                    }
                 } else {
-                    appendDiscreteCondition(discreteCriterias);
+                    values.add(curr);
                 }
+                count++;
             }
-            queryString.append((close ? ")" : ""));
 
-            return new PreparedQuery(queryString.toString() + ";", queryInputs);
+            return count;
         }
 
-        PreparedQuery insert() {
+        // FTS5 query matching any of the texts. Words are quoted, the text can't inject its syntax,
+        // and a text without any word matches nothing
+        private static String match(List<String> texts) {
+
+            List<String> alternatives = new ArrayList<>();
+            for (String text : texts) {
+                List<String> words = new ArrayList<>();
+                for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+                    if (!word.isEmpty()) {
+                        words.add("\"" + word + "\"*");
+                    }
+                }
+                alternatives.add(words.isEmpty() ? "\"\"" : "(" + String.join(" ", words) + ")");
+            }
+
+            return String.join(" OR ", alternatives);
+        }
 
-            init("INSERT INTO " + tableName + "(");
+        PreparedQuery insert(Table tuple) {
+
+            StringBuilder query = new StringBuilder("INSERT INTO " + tableName + "(");
             StringBuilder valuesQuery = new StringBuilder("VALUES (");
+            Vector<Object> inputs = new Vector<>();
 
             boolean first = true;
-            for (i=1;i<columns.size();i++) {
+            for (int i=1;i<columns.size();i++) {
 
-                Object curr = instance.reflect.fields.get(i);
+                Object curr = fields.get(tuple, i);
                 if (curr == null) {
                     continue;
                 }
 
-                queryString.append((first ? "" : ", ") + columns.elementAt(i).name());
+                query.append((first ? "" : ", ") + columns.get(i).name());
                 valuesQuery.append((first ? "" : ", ") + "?");
-                queryInputs.add(curr);
+                inputs.add(curr);
                 first = false;
             }
 
-            queryString.append(") ");
+            query.append(") ");
             valuesQuery.append(");");
-            String pstmt = queryString.toString() + valuesQuery.toString();
 
-            return new PreparedQuery(pstmt, queryInputs);
+            return new PreparedQuery(query.toString() + valuesQuery.toString(), inputs);
+        }
+
+        // nulls are bound explicitly, see DataDefinition
+        String insertTemplate() {
+            return define.insertTemplate;
         }
 
-        PreparedQuery update() {
+        Vector<Object> insertValues(Table tuple) {
+            Vector<Object> inputs = new Vector<>();
+            for (int i=1;i<columns.size();i++) {
+                inputs.add(fields.get(tuple, i));
+            } return inputs;
+        }
+
+        PreparedQuery delete(Table tuple) {
+            Vector<Object> inputs = new Vector<>();
+            inputs.add(tuple.id);
+            return new PreparedQuery("DELETE FROM " + tableName + " WHERE id=?;", inputs);
+        }
+
+        PreparedQuery update(Table tuple) {
 
             StringBuilder query = new StringBuilder("UPDATE " + tableName + " SET ");
             Vector<Object> inputs = new Vector<>();
@@ -107,166 +307,506 @@ class SQLiteQueryConstructor {
             boolean first = true;
             for (int i=1;i<columns.size();i++) {
 
-                Object curr = instance.reflect.fields.get(i);
+                Object curr = fields.get(tuple, i);
                 if (curr == null) {
                     continue;
                 }
 
-                query.append((!first ? ", " : "") + columns.elementAt(i).name() + " = ? "); 
+                query.append((!first ? ", " : "") + columns.get(i).name() + " = ? "); 
                 inputs.add(curr);
                 first = false;
             }
             query.append("WHERE id=?;");
-            inputs.add(instance.id);
+            inputs.add(tuple.id);
 
             return new PreparedQuery(query.toString(), inputs);
         }
+    }
 
-        private void appendBoundedCondition(Vector<Range> boundedCriterias) {
+    // What the SQL of a select depends on: how many values each column is given (how many ranges
+    // for the bounded ones), how the page orders and seeks, whether the interval and full-text
+    // indexes are there to be probed and what's aggregated, if anything. The values themselves are bound
+    static final class Shape {
+
+        private final int[] counts;
+        private final String orderBy;
+        private final boolean descending, afterKey, intervals, fullText;
+        private final Aggregate<?> aggregate;
+        private final int hash;
+
+        Shape(int[] counts, Page page, boolean intervals, boolean fullText, Aggregate<?> aggregate) {
+            this.counts = counts;
+            this.orderBy = page == null ? null : page.orderBy();
+            this.descending = page != null && page.isDescending();
+            this.afterKey = page != null && page.isAfterKey();
+            this.intervals = intervals;
+            this.fullText = fullText;
+            this.aggregate = aggregate;
+            this.hash = 31 * Arrays.hashCode(counts) + Objects.hash(orderBy, descending, afterKey, intervals, fullText, aggregate);
+        }
 
-            if (boundedCriterias == null || checkedBoundedCriterias == boundedCriterias.size()) {
-                return;
-            }
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Shape shape
+                && hash == shape.hash
+                && Arrays.equals(counts, shape.counts)
+                && Objects.equals(orderBy, shape.orderBy)
+                && descending == shape.descending
+                && afterKey == shape.afterKey
+                && intervals == shape.intervals
+                && fullText == shape.fullText
+                && Objects.equals(aggregate, shape.aggregate);
+        }
 
-            for (Range criteria : boundedCriterias) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 
-                if (!criteria.isValidCriteriaFor(instance.reflect)) {
-                    String s = "Invalid bounded criteria: %s!";
-                    throw new IllegalArgumentException(String.format(s, criteria));
-                }
+    // Everything derived from the model alone, rendered once and shared by all of its instances
+    static class DataDefinition {
 
-                if (!criteria.attributeName.equals(col.name())) {
-                    continue;
+        // criteria given in lists of growing sizes make as many shapes, past this many they aren't kept
+        private static final int MAX_CACHED_SELECTS = 1024;
+
+        final String tableName;
+        final List<Column> columns;
+        final List<String> searchedText;
+        final String fullTextIndex;
+
+        final private String[] names;
+        final private String tableCreationQuery, insertTemplate, searchText;
+        final private Map<String,List<String>> indexes;
+        final private List<String> intervalIndexes;
+        final private Map<Shape,String> selects = new ConcurrentHashMap<>();
+
+        static DataDefinition of(Class<? extends Table> model) {
+            return definitions.computeIfAbsent(model, DataDefinition::new);
+        }
+
+        private DataDefinition(Class<? extends Table> model) {
+
+            FieldInfos fields = Reflection.fieldsOf(model);
+            this.tableName = tableName(model.getSimpleName());
+
+            List<Column> columns = new ArrayList<>();
+            for (int i=0;i<fields.count;i++) {
+                columns.add(new Column(columnName(fields.names[i], fields.constraints[i]), fields.constraints[i]));
+            }
+            this.columns = List.copyOf(columns);
+            this.names = fields.names;
+            this.searchedText = List.copyOf(fields.haveConstraint(Constraints::searchedText));
+
+            // already rendered at compile time when the model has a generated mapper
+            if (fields.mapper != null) {
+                this.tableCreationQuery = fields.mapper.createTable();
+                this.insertTemplate = fields.mapper.insertTemplate();
+            } else {
+                this.tableCreationQuery = createTable(tableName, fields.names, fields.constraints);
+                this.insertTemplate = insertTemplate(tableName, fields.names, fields.constraints);
+            }
+            this.indexes = indexes(tableName, fields.names, fields.constraints);
+
+            List<String> intervalIndexes = new ArrayList<>();
+            for (int i=0;i<fields.count;i++) {
+                if (intervalIndexed(fields.constraints[i])) {
+                    intervalIndexes.add(intervalIndexName(tableName, columns.get(i).name()));
                 }
+            }
+            this.intervalIndexes = List.copyOf(intervalIndexes);
+
+            this.fullTextIndex = fullTextIndexed(fields.constraints) ? fullTextIndexName(tableName) : null;
+            this.searchText = fullTextIndex == null ? null :
+                "SELECT " + searchTextProjection() + " FROM " + tableName + " JOIN " + fullTextIndex
+                + " ON " + fullTextIndex + ".rowid = " + tableName + ".id"
+                + " WHERE " + fullTextIndex + " MATCH ? ORDER BY bm25(" + fullTextIndex + ") LIMIT ?;";
+        }
 
-                appendConnector(" OR ");
+        // the renderers are shared with MapperProcessor, so generated and reflected SQL can't differ
 
-                Object lowerBound = criteria.lowerBound(), upperBound = criteria.upperBound();
-                if (col.constraints().lowerBound()) {
-                    appendOverlap(col.name(), col.constraints().boundedPair(), lowerBound, upperBound);
-                } else {
-                    queryString.append(col.name() + " BETWEEN ? AND ?");
-                    queryInputs.add(lowerBound);
-                    queryInputs.add(upperBound);
+        static String createTable(String tableName, String[] names, Constraints[] constraints) {
+
+            StringBuilder table = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + "(");
+            Vector<String> foreignKeys = new Vector<>();
+            boolean first = true;
+
+            for (int i=0;i<names.length;i++) {
+
+                if (constraints[i].foreignKey()) {
+                    String foreignKey = "FOREIGN KEY (id_%s) REFERENCES %ss(id)";
+                    foreignKeys.add(String.format(foreignKey, names[i], names[i]));
                 }
 
-                checkedBoundedCriterias++;
+                table
+                    .append(first ? "" : ", ")
+                    .append(columnName(names[i], constraints[i]) + " " + constraints[i].type())
+                    .append(constraints[i].nullable() ? "" : " NOT NULL")
+                    .append(constraints[i].primaryKey() ? " PRIMARY KEY AUTOINCREMENT" : "");
+
+                first = false;
+            }
+
+            for (String fk : foreignKeys) {
+                table.append(", " + fk);
             }
+            table.append(");");
+
+            return table.toString();
         }
 
-        private void appendDiscreteCondition(Vector<? extends Table> discreteCriterias) {
+        // one index per indexed, unique or foreign key column and one per composite group, so
+        // the discrete conditions, the cascades (probing the foreign keys) and the ranges aren't table scans.
+        // An overlap can't be served by a B-tree, the bounded pairs asking for it get an R*Tree,
+        // and neither can words inside a text, the searchedText attributes asking for it get an FTS5 table
+        static Map<String,List<String>> indexes(String tableName, String[] names, Constraints[] constraints) {
 
-            for (int j=0;j<discreteCriterias.size();j++) {
+            Map<String,List<String>> indexes = new LinkedHashMap<>();
+            Map<String,List<Integer>> groups = new LinkedHashMap<>(), uniqueGroups = new LinkedHashMap<>();
 
-                Object curr = discreteCriterias.elementAt(j).reflect.fields.get(i);
-                if (curr == null) {
+            for (int i=0;i<names.length;i++) {
+
+                if (constraints[i].primaryKey()) {
                     continue;
                 }
 
-                if (appendConnector(", ?", curr)) {
-                    continue;
+                String column = columnName(names[i], constraints[i]);
+                if (constraints[i].unique()) {
+                    String name = "ux_" + tableName + "_" + column;
+                    indexes.put(name, List.of(createIndex(true, name, tableName, column, constraints[i].indexWhere())));
+                } else if (constraints[i].indexed() || constraints[i].foreignKey()) {
+                    String name = "idx_" + tableName + "_" + column;
+                    indexes.put(name, List.of(createIndex(false, name, tableName, column, constraints[i].indexWhere())));
+                }
+
+                if (intervalIndexed(constraints[i])) {
+                    String upperBound = columnName(constraints[i].boundedPair(), constraints[i]);
+                    indexes.put(intervalIndexName(tableName, column), createIntervalIndex(tableName, column, upperBound, constraints[i]));
                 }
 
-                if (columns.elementAt(i).constraints().searchedText()) {
-                    boolean needOr = false;
-                    for (var att : instance.reflect.fields.haveConstraint(Constraints::searchedText)) {
-                        queryString.append((needOr ? " OR " : "") + att);
-                        queryString.append(" LIKE ?");
-                        queryInputs.add(String.valueOf(curr)+"%");
-                        needOr = true;
-                    } continue;
+                if (!constraints[i].index().isEmpty()) {
+                    groups.computeIfAbsent(constraints[i].index(), _ -> new ArrayList<>()).add(i);
                 }
+                if (!constraints[i].uniqueIndex().isEmpty()) {
+                    uniqueGroups.computeIfAbsent(constraints[i].uniqueIndex(), _ -> new ArrayList<>()).add(i);
+                }
+            }
+
+            for (boolean unique : new boolean[] {false, true}) {
+                for (var group : (unique ? uniqueGroups : groups).entrySet()) {
+
+                    List<String> columns = new ArrayList<>();
+                    String where = "";
+                    for (int i : group.getValue()) {
+                        columns.add(columnName(names[i], constraints[i]));
+                        where = where.isEmpty() ? constraints[i].indexWhere() : where;
+                    }
 
-                queryString.append(columns.elementAt(i).name());
-                queryString.append(" IN (?");
-                queryInputs.add(curr);
-                close = true;
+                    String name = (unique ? "ux_" : "idx_") + tableName + "_" + group.getKey();
+                    indexes.put(name, List.of(createIndex(unique, name, tableName, String.join(", ", columns), where)));
+                }
+            }
+
+            if (fullTextIndexed(constraints)) {
+                List<String> columns = new ArrayList<>();
+                for (int i=0;i<names.length;i++) {
+                    if (constraints[i].searchedText()) {
+                        columns.add(columnName(names[i], constraints[i]));
+                    }
+                }
+                indexes.put(fullTextIndexName(tableName), createFullTextIndex(tableName, columns));
             }
+
+            return Collections.unmodifiableMap(indexes);
+        }
+
+        private static String createIndex(boolean unique, String name, String tableName, String columns, String where) {
+            return
+                "CREATE " + (unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + name
+                + " ON " + tableName + "(" + columns + ")" + (where.isEmpty() ? "" : " WHERE " + where) + ";";
+        }
+
+        static boolean isUnique(String indexName) {
+            return indexName.startsWith("ux_");
+        }
+
+        static boolean intervalIndexed(Constraints constraints) {
+            return constraints.lowerBound() && constraints.intervalIndex() && !constraints.boundedPair().isEmpty();
         }
 
-        private void appendConnector(String connector) {
-            appendConnector(connector, null);
+        static String intervalIndexName(String tableName, String lowerBound) {
+            return "rt_" + tableName + "_" + lowerBound;
         }
 
-        private boolean appendConnector(String connector, Object curr) {
+        // R*Tree of (id, lo, hi) kept in sync by triggers and filled from the rows already there.
+        // Each row is stored as the interval between its bounds, a missing bound making it a point
+        // so it's found whenever the overlap condition could match it. Rows without any bound aren't stored
+        private static List<String> createIntervalIndex(String tableName, String lowerBound, String upperBound, Constraints constraints) {
+
+            String name = intervalIndexName(tableName, lowerBound);
+            String lo = "coalesce(" + intervalKey("%1$s." + lowerBound, constraints) + ", " + intervalKey("%1$s." + upperBound, constraints) + ")";
+            String hi = "coalesce(" + intervalKey("%1$s." + upperBound, constraints) + ", " + intervalKey("%1$s." + lowerBound, constraints) + ")";
+            String row = "%1$s.id, min(" + lo + ", " + hi + "), max(" + lo + ", " + hi + ")";
+            String stored = lo + " IS NOT NULL";
+
+            return List.of(
+                "CREATE VIRTUAL TABLE IF NOT EXISTS " + name + " USING rtree(id, lo, hi);",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_insert AFTER INSERT ON " + tableName
+                    + " WHEN " + String.format(stored, "NEW")
+                    + " BEGIN INSERT INTO " + name + " VALUES (" + String.format(row, "NEW") + "); END;",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_update AFTER UPDATE OF " + lowerBound + ", " + upperBound + " ON " + tableName
+                    + " BEGIN DELETE FROM " + name + " WHERE id = OLD.id;"
+                    + " INSERT INTO " + name + " SELECT " + String.format(row, "NEW") + " WHERE " + String.format(stored, "NEW") + "; END;",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_delete AFTER DELETE ON " + tableName
+                    + " BEGIN DELETE FROM " + name + " WHERE id = OLD.id; END;",
+                "INSERT OR REPLACE INTO " + name + " SELECT " + String.format(row, tableName)
+                    + " FROM " + tableName + " WHERE " + String.format(stored, tableName) + ";"
+            );
+        }
+
+        static boolean fullTextIndexed(Constraints[] constraints) {
+            for (Constraints c : constraints) {
+                if (c.searchedText() && c.fullText()) {
+                    return true;
+                }
+            } return false;
+        }
+
+        static String fullTextIndexName(String tableName) {
+            return "fts_" + tableName;
+        }
+
+        // FTS5 table reading its text from the model's table (external content), so only the index
+        // is stored. The triggers hand it the old values to remove and the new ones to add
+        private static List<String> createFullTextIndex(String tableName, List<String> columns) {
+
+            String name = fullTextIndexName(tableName);
+            String list = String.join(", ", columns);
+            String oldValues = "OLD." + String.join(", OLD.", columns);
+            String newValues = "NEW." + String.join(", NEW.", columns);
+
+            String remove = "INSERT INTO " + name + "(" + name + ", rowid, " + list + ") VALUES ('delete', OLD.id, " + oldValues + ");";
+            String add = "INSERT INTO " + name + "(rowid, " + list + ") VALUES (NEW.id, " + newValues + ");";
+
+            return List.of(
+                "CREATE VIRTUAL TABLE IF NOT EXISTS " + name + " USING fts5(" + list + ", content='" + tableName + "', content_rowid='id');",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_insert AFTER INSERT ON " + tableName + " BEGIN " + add + " END;",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_update AFTER UPDATE OF " + list + " ON " + tableName + " BEGIN " + remove + " " + add + " END;",
+                "CREATE TRIGGER IF NOT EXISTS " + name + "_delete AFTER DELETE ON " + tableName + " BEGIN " + remove + " END;",
+                "INSERT INTO " + name + "(" + name + ") VALUES ('rebuild');"
+            );
+        }
 
-            if (where) {
-                queryString.append(" WHERE ");
-                where = false;
-            } else if (currentAttribute == i) {
-                queryString.append(connector);
-                if (curr != null) {
-                    queryInputs.add(curr);
-                } return true;
-            } else if (currentAttribute < i) {
-                queryString.append((close ? ")" : "" ) + " AND ");
-                close = false;
+        // the R*Tree only holds numbers, dates (ISO text) are keyed by their julian day
+        private static String intervalKey(String expression, Constraints constraints) {
+            String type = constraints.type().toUpperCase();
+            boolean numeric = type.contains("INT") || type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB") || type.contains("NUM");
+            return numeric ? expression : "julianday(" + expression + ")";
+        }
+
+        // same columns for every row so a whole batch shares one statement
+        static String insertTemplate(String tableName, String[] names, Constraints[] constraints) {
+
+            StringBuilder insert = new StringBuilder("INSERT INTO " + tableName + "(");
+            StringBuilder values = new StringBuilder("VALUES (");
+            for (int i=1;i<names.length;i++) {
+                insert.append((i == 1 ? "" : ", ") + columnName(names[i], constraints[i]));
+                values.append((i == 1 ? "" : ", ") + "?");
             }
-            currentAttribute = i;
-            return false;
+
+            return insert.toString() + ") " + values.toString() + ");";
         }
 
-        private void appendOverlap(String lowerBoundName, String upperBoundName, Object lowerBound, Object upperBound) {
+        String table() {
+            return tableCreationQuery;
+        }
 
-            String overlapCondition =
-                "(" + lowerBoundName + " BETWEEN ? AND ?) OR " +
-                "(" + upperBoundName + " BETWEEN ? AND ?) OR " +
-                "(" + lowerBoundName + " < ? AND " + upperBoundName + " > ?)";
+        // index name -> the statements creating it, to be run together
+        Map<String,List<String>> indexes() {
+            return indexes;
+        }
 
-            queryString.append("(" + overlapCondition.toString() + ")");
-            queryInputs.add(lowerBound);
-            queryInputs.add(upperBound);
-            queryInputs.add(lowerBound);
-            queryInputs.add(upperBound);
-            queryInputs.add(lowerBound);
-            queryInputs.add(upperBound);
+        // probed only once they all exist, the selects don't depend on them otherwise
+        boolean intervalIndexesReady() {
+            return !intervalIndexes.isEmpty() && Schema.hasIndexes(intervalIndexes);
         }
-    }
 
-    class DataDefinition {
+        boolean fullTextIndexReady() {
+            return fullTextIndex != null && Schema.hasIndexes(List.of(fullTextIndex));
+        }
 
-        final private String tableCreationQuery;
+        String searchText() {
+            return searchText;
+        }
 
-        private DataDefinition() {
+        String searchTextProjection() {
+            return tableName + ".*";
+        }
 
-            StringBuilder table = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + "(");
-            String[] names = Arrays.asList(instance.reflect.fields.names).toArray(String[]::new);
-            Constraints[] constraints = instance.reflect.fields.constraints;
-            Vector<String> foreignKeys = new Vector<>();
-            boolean first = true;
+        String select(Shape shape) {
 
-            for (int i=0;i<instance.reflect.fields.count;i++) {
+            String template = selects.get(shape);
+            if (template == null) {
+                template = renderSelect(shape);
+                if (selects.size() < MAX_CACHED_SELECTS) {
+                    // threads rendering the same shape at once all keep the first template
+                    String cached = selects.putIfAbsent(shape, template);
+                    template = cached != null ? cached : template;
+                }
+            }
 
-                if (constraints[i].foreignKey()) {
-                    String foreignKey = "FOREIGN KEY (id_%s) REFERENCES %ss(id)";
-                    foreignKeys.add(String.format(foreignKey, names[i], names[i]));
-                    names[i] = "id_" + names[i];
+            return template;
+        }
+
+        // values of a column are ORed, columns ANDed. The bounds of a lowerBound attribute are
+        // matched as an overlap with its boundedPair (narrowed down by its interval index first, if any),
+        // searched texts as prefixes of all the searchedText attributes (of their words, with a full-text index)
+        private String renderSelect(Shape shape) {
+
+            StringBuilder query = new StringBuilder("SELECT " + projection(shape.aggregate) + " FROM " + tableName);
+            int conditionsStart = -1;
+            boolean close = false;
+
+            for (int i=0;i<columns.size();i++) {
+
+                int count = shape.counts[i];
+                if (count == 0) {
+                    continue;
                 }
 
-                table
-                    .append(first ? "" : ", ")
-                    .append(names[i] + " " + constraints[i].type())
-                    .append(constraints[i].nullable() ? "" : " NOT NULL")
-                    .append(constraints[i].primaryKey() ? " PRIMARY KEY AUTOINCREMENT" : "");
+                Column col = columns.get(i);
+                if (conditionsStart < 0) {
+                    query.append(" WHERE ");
+                    conditionsStart = query.length();
+                } else {
+                    query.append((close ? ")" : "") + " AND ");
+                    close = false;
+                }
 
-                columns.add(new Column(names[i], constraints[i]));
-                first = false;
+                if (col.constraints().bounded() || col.constraints().lowerBound()) {
+                    for (int k=0;k<count;k++) {
+                        query.append(k == 0 ? "" : " OR ");
+                        if (shape.intervals && intervalIndexed(col.constraints())) {
+                            appendIntervalProbe(query, col);
+                        } else if (col.constraints().lowerBound()) {
+                            appendOverlap(query, col.name(), col.constraints().boundedPair());
+                        } else {
+                            query.append(col.name() + " BETWEEN ? AND ?");
+                        }
+                    }
+                } else if (col.constraints().searchedText() && shape.fullText) {
+                    query.append("id IN (SELECT rowid FROM " + fullTextIndex + " WHERE " + fullTextIndex + " MATCH ?)");
+                } else if (col.constraints().searchedText()) {
+                    for (int k=0;k<searchedText.size();k++) {
+                        query.append((k == 0 ? "" : " OR ") + searchedText.get(k) + " LIKE ?");
+                    }
+                    query.append(", ?".repeat(count - 1));
+                } else {
+                    query.append(col.name() + " IN (?" + ", ?".repeat(count - 1));
+                    close = true;
+                }
             }
+            query.append(close ? ")" : "");
 
-            for (String fk : foreignKeys) {
-                table.append(", " + fk);
+            if (shape.aggregate != null && shape.aggregate.isGrouped()) {
+                String groups = groupColumns(shape.aggregate);
+                query.append(" GROUP BY " + groups + " ORDER BY " + groups);
             }
-            table.append(");");
 
-            this.tableCreationQuery = table.toString();
+            // seeks past the previous page's last row, the (key, id) order makes it use the index
+            if (shape.orderBy != null) {
+
+                String column = columnOf(shape.orderBy);
+                String direction = shape.descending ? " DESC" : "";
+                String comparison = shape.descending ? " < " : " > ";
+
+                if (shape.afterKey) {
+
+                    if (conditionsStart < 0) {
+                        query.append(" WHERE ");
+                    } else {
+                        query.insert(conditionsStart, "(").append(") AND ");
+                    }
+
+                    if (column.equals("id")) {
+                        query.append("id" + comparison + "?");
+                    } else {
+                        query.append("(" + column + comparison + "? OR (" + column + " = ? AND id" + comparison + "?))");
+                    }
+                }
+
+                query.append(" ORDER BY " + column + direction + (column.equals("id") ? "" : ", id" + direction));
+                query.append(" LIMIT ?");
+            }
+
+            return query.toString() + ";";
         }
 
-        String table() {
-            return tableCreationQuery;
+        // every column, or the aggregate followed by the values it's grouped by
+        String projection(Aggregate<?> aggregate) {
+
+            if (aggregate == null) {
+                return "*";
+            }
+
+            String attribute = aggregate.attributeName() == null ? "*" : columnOf(aggregate.attributeName());
+            String projection = aggregate.function() + "(" + attribute + ")";
+            return aggregate.isGrouped() ? projection + ", " + groupColumns(aggregate) : projection;
+        }
+
+        private String groupColumns(Aggregate<?> aggregate) {
+            List<String> groups = new ArrayList<>();
+            for (String attributeName : aggregate.groupBy()) {
+                groups.add(columnOf(attributeName));
+            } return String.join(", ", groups);
+        }
+
+        // nulls included, as a value the attribute takes
+        String distinct(String attributeName) {
+            return "SELECT DISTINCT " + columnOf(attributeName) + " FROM " + tableName + ";";
+        }
+
+        // how many of the count bound ids have a row
+        String countIds(int count) {
+            return "SELECT COUNT(*) FROM " + tableName + " WHERE id IN (?" + ", ?".repeat(count - 1) + ");";
+        }
+
+        private String columnOf(String attributeName) {
+            for (int j=0;j<columns.size();j++) {
+                if (names[j].equals(attributeName)) {
+                    return columns.get(j).name();
+                }
+            } throw new IllegalArgumentException("No column for the attribute: " + attributeName);
+        }
+
+        // the R*Tree gives the candidates, a superset (its bounds are rounded outwards) which the
+        // overlap condition checks exactly
+        private void appendIntervalProbe(StringBuilder query, Column col) {
+
+            String name = intervalIndexName(tableName, col.name());
+            String upperBound = columnName(col.constraints().boundedPair(), col.constraints());
+
+            query.append(
+                "(id IN (SELECT id FROM " + name
+                + " WHERE lo <= " + intervalKey("?", col.constraints())
+                + " AND hi >= " + intervalKey("?", col.constraints()) + ") AND "
+            );
+            appendOverlap(query, col.name(), upperBound);
+            query.append(")");
+        }
+
+        private static void appendOverlap(StringBuilder query, String lowerBoundName, String upperBoundName) {
+
+            String overlapCondition =
+                "(" + lowerBoundName + " BETWEEN ? AND ?) OR " +
+                "(" + upperBoundName + " BETWEEN ? AND ?) OR " +
+                "(" + lowerBoundName + " < ? AND " + upperBoundName + " > ?)";
+
+            query.append("(" + overlapCondition + ")");
         }
     }
 
-    class Column extends Pair<String,Constraints> {
+    static class Column extends Pair<String,Constraints> {
 
         private Column(String name, Constraints constraints) {
             super(name, constraints);
@@ -283,8 +823,20 @@ class SQLiteQueryConstructor {
 
     class PreparedQuery extends Pair<String,Vector<Object>> {
 
+        // the columns a select reads, null for the other statements
+        private final String projection;
+
         private PreparedQuery(String template, Vector<Object> values) {
+            this(template, values, null);
+        }
+
+        private PreparedQuery(String template, Vector<Object> values, String projection) {
             super(template, values);
+            this.projection = projection;
+        }
+
+        String projection() {
+            return projection;
         }
 
         String template() {
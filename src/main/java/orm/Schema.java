@@ -0,0 +1,193 @@
+package orm;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import orm.ConnectionPool.PooledConnection;
+import orm.SQLiteQueryConstructor.DataDefinition;
+import orm.util.BugDetectedException;
+
+import static orm.util.Console.error;
+
+// Which tables and indexes exist, read from sqlite_master once and kept up to date by the DDL issued here.
+// Reading never creates anything: a model's table and indexes are created on its first write,
+// or all at once by create(), instead of a CREATE TABLE per insert
+public class Schema {
+
+    private static final Set<String> tables = ConcurrentHashMap.newKeySet();
+    private static final Set<String> indexes = ConcurrentHashMap.newKeySet();
+    private static final Set<Class<? extends Table>> ensured = ConcurrentHashMap.newKeySet();
+    private static volatile boolean loaded = false;
+
+    // checks the cache, reading sqlite_master only if there's already a database to read from
+    static boolean exists(String tableName) {
+
+        if (!loaded) {
+            if (!Table.dbFile()) {
+                return false;
+            }
+            load();
+        }
+
+        return tables.contains(tableName);
+    }
+
+    // makes sure the instance's table and indexes are there before writing to it
+    static void ensure(Table instance) {
+        if (!ensured.contains(instance.getClass())) {
+            create(List.of(instance.getClass()));
+        }
+    }
+
+    // creates the tables and indexes of every registered model still missing them, in one commit
+    public static void create() {
+        Transaction.retryOnBusy(() -> {
+            create(List.copyOf(Table.getModels()));
+            return null;
+        });
+    }
+
+    // to be called after any DDL issued outside of the ORM
+    public static void invalidate() {
+        synchronized (Schema.class) {
+            loaded = false;
+            tables.clear();
+            indexes.clear();
+            ensured.clear();
+            DataMapper.RowMapper.clear();
+        }
+    }
+
+    public static Set<String> getTables() {
+        return Set.copyOf(tables);
+    }
+
+    public static Set<String> getIndexes() {
+        return Set.copyOf(indexes);
+    }
+
+    static boolean hasIndexes(Collection<String> names) {
+        return loaded && indexes.containsAll(names);
+    }
+
+    private static synchronized void load() {
+
+        if (loaded) {
+            return;
+        }
+
+        try (PooledConnection conn = Table.getConnectionPool().acquire();
+             Statement stmt = conn.createStatement()) {
+            read(stmt);
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nWhile reading the schema", e), e);
+        }
+
+        loaded = true;
+    }
+
+    private static void read(Statement stmt) throws SQLException {
+
+        // virtual tables (R*Tree...) are indexes of the model tables
+        String listTables =
+            "SELECT name, type = 'table' AND sql NOT LIKE 'CREATE VIRTUAL TABLE%' "
+            + "FROM sqlite_master WHERE type IN ('table', 'index');";
+
+        try (ResultSet rs = stmt.executeQuery(listTables)) {
+            while (rs.next()) {
+                (rs.getBoolean(2) ? tables : indexes).add(rs.getString(1));
+            }
+        }
+    }
+
+    // Nothing of ours is locked while waiting for SQLite's write lock: the thread holding it in a transaction
+    // may need to create a table too. SQLite's lock serializes the creations instead, what other connections
+    // created in between is read again once it's held. Callers retry on SQLITE_BUSY (Transaction.retryOnBusy)
+    private static void create(List<Class<? extends Table>> models) {
+
+        load();
+        String creation = null;
+
+        try (PooledConnection conn = Table.getConnectionPool().acquire();
+             Statement stmt = conn.createStatement()) {
+
+            // one commit for all the tables, unless we're already inside a transaction
+            boolean autoCommit = conn.connection().getAutoCommit();
+            if (autoCommit) {
+                conn.begin(true);
+            }
+            read(stmt);
+            for (var model : models) {
+                var definition = DataDefinition.of(model);
+                if (!tables.contains(definition.tableName)) {
+                    creation = definition.table();
+                    stmt.execute(creation);
+                    Transaction.markDdl();
+                }
+            }
+            for (var model : models) {
+                createIndexes(stmt, DataDefinition.of(model));
+            }
+            if (autoCommit) {
+                conn.connection().commit();
+                conn.connection().setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nTable creation query:\n\n%s", e, creation), e);
+        }
+
+        for (var model : models) {
+            tables.add(DataDefinition.of(model).tableName);
+        }
+        ensured.addAll(models);
+    }
+
+    // A failing index (no R*Tree module...) is reported, the table works without it. Its statements are undone
+    // together so it's never left half built. A unique index fails over the duplicates an existing table already
+    // holds: the table stays usable but unchecked, and the index is tried again by the next creation
+    private static void createIndexes(Statement stmt, DataDefinition definition) {
+        for (var index : definition.indexes().entrySet()) {
+
+            if (indexes.contains(index.getKey())) {
+                continue;
+            }
+
+            String creation = null;
+            try {
+                stmt.execute("SAVEPOINT create_index;");
+                for (String statement : index.getValue()) {
+                    creation = statement;
+                    stmt.execute(statement);
+                }
+                stmt.execute("RELEASE create_index;");
+                indexes.add(index.getKey());
+                Transaction.markDdl();
+            } catch (SQLException e) {
+                rollbackIndex(stmt);
+                if (DataDefinition.isUnique(index.getKey())) {
+                    String s = "The unique index %s can't be created, %s already holds duplicates (%s). They aren't rejected"
+                        + " until it is: remove them, then call Schema.create() or restart.\n\nIndex creation query:\n\n%s";
+                    error(s, index.getKey(), definition.tableName, e.getMessage(), creation);
+                } else {
+                    error("%s\n\nIndex creation query:\n\n%s", e, creation);
+                }
+            }
+        }
+    }
+
+    private static void rollbackIndex(Statement stmt) {
+        try {
+            stmt.execute("ROLLBACK TO create_index;");
+            stmt.execute("RELEASE create_index;");
+        } catch (SQLException e) {
+            error(e);
+        }
+    }
+}
@@ -1,42 +1,80 @@
 package orm;
 
-import java.sql.PreparedStatement;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import java.io.File;
 
+import orm.ConnectionPool.PooledConnection;
+import orm.ConnectionPool.PooledConnection.CachedStatement;
+import orm.DataMapper.Cursor;
 import orm.Reflection.FieldInfos;
+import orm.SQLiteQueryConstructor.PreparedQuery;
 import orm.util.BugDetectedException;
 import orm.Constraints;
 import orm.util.Pair;
 
-import static orm.util.Console.error;
 import static orm.Reflection.getModelInstance;
 
 import static orm.DataMapper.bindValues;
+import static orm.DataMapper.fetchAggregates;
 import static orm.DataMapper.fetchResutls;
 
+// Concurrency model: the static API can be called from any number of threads (platform or virtual).
+// - What's shared is either immutable once built (per-model metadata, mappers, SQL templates)
+//   or held in concurrent structures (registries, the connection pool, the query cache)
+// - What's mutable is confined to one thread: its pooled connection, transaction and identity map
+//   are bound to it, a stream has to be read where it was opened
+// - Model instances aren't synchronized: a tuple must not be modified while another thread uses it,
+//   and those shared through the query cache are read-only
+// - SQLite serializes writers, concurrent writes wait for each other up to the busy timeout
+// StressTest checks it against a real database
 public abstract class Table {
 
     // database path relative to the project's root directory
     private static String dbPath = System.getenv("DB_PATH");
 
+    // connections are opened once and reused, DB_POOL_SIZE bounds how many are kept
+    // and DB_STATEMENT_CACHE_SIZE how many prepared statements each of them holds on to
+    private static final ConnectionPool pool = new ConnectionPool(
+        "jdbc:sqlite:" + dbPath, intFromEnv("DB_POOL_SIZE", Runtime.getRuntime().availableProcessors()), intFromEnv("DB_STATEMENT_CACHE_SIZE", 64)
+    );
+    static {
+        // the writes still queued are committed before the connections are closed
+        Runtime.getRuntime().addShutdownHook(new Thread(Table::shutdown));
+    }
+
+    // rows read at once by a stream, each chunk resolving its foreign keys together
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
+    // keeps 'id IN (...)' well under SQLite's bound parameters limit
+    private static final int MAX_IDS_PER_COUNT = 500;
+
     // loading subclasses into the JVM
-    private static Set<Class<? extends Table>> models = new HashSet<>();
+    private static final Set<Class<? extends Table>> models = ConcurrentHashMap.newKeySet();
     static {
         Reflection.loadModels(new String[] {"Client", "Vehicle", "Reservation", "Return", "Payment", "User"});
     }
@@ -48,12 +86,14 @@ public abstract class Table {
         return this.id;
     }
 
-    // Reflection is used to access subclasse (model) specifics
+    // Reflection is used to access subclasse (model) specifics, a view over the metadata shared
+    // by the model's instances. The query constructor holds nothing of the instance, there's one per model
     public final Reflection reflect;
     final SQLiteQueryConstructor query;
+    @SuppressWarnings("this-escape") // the view only keeps the reference and reads the class
     protected Table() {
         this.reflect = new Reflection(this);
-        this.query = new SQLiteQueryConstructor(this);
+        this.query = SQLiteQueryConstructor.of(getClass());
     }
 
     // print in a tree-like structure (to represent aggregations)
@@ -68,6 +108,8 @@ public abstract class Table {
             Object curr = reflect.fields.get(i);
             if (curr == null) {
                 continue;
+            } else if (curr instanceof Ref<?> ref && ref.isLoaded()) {
+                curr = ref.get();
             }
 
             if (hasSubClass(curr.getClass().getSimpleName())) {
@@ -113,6 +155,18 @@ public abstract class Table {
     // CRUD operations: (Create, Read, Update, Delete) = (add, search, edit, delete)
 
     public static Vector<Table> search(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias) {
+        return search(discreteCriterias, boundedCriterias, Fetch.BATCH);
+    }
+
+    public static Vector<Table> search(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Fetch fetch) {
+        return search(discreteCriterias, boundedCriterias, fetch, null);
+    }
+
+    public static Vector<Table> search(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Page page) {
+        return search(discreteCriterias, boundedCriterias, Fetch.BATCH, page);
+    }
+
+    public static Vector<Table> search(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Fetch fetch, Page page) {
 
         if (discreteCriterias == null || discreteCriterias.size() == 0 || discreteCriterias.elementAt(0) == null) {
             String s = "Give at least one discrete criteria when searching!";
@@ -125,50 +179,186 @@ public abstract class Table {
             throw new IllegalStateException(String.format(s, instance.getClass().getSimpleName()));
         }
 
-        var preparedQuery = instance.query.manipulate.select(discreteCriterias, boundedCriterias);
-        Vector<Table> tuples = null;
+        return fetch(instance, instance.query.manipulate.select(discreteCriterias, boundedCriterias, page), fetch);
+    }
+
+    // Full-text search (see Constraints.fullText): the words of the text are matched as prefixes
+    // in any of the model's searchedText attributes, the limit best matches first
+
+    public static Vector<Table> searchText(String modelName, String text, int limit) {
+
+        Table instance = getModelInstance(modelName);
+        if (!instance.db()) {
+            String s = "No Database or no table found for the model: %s while attempting a search!";
+            throw new IllegalStateException(String.format(s, modelName));
+        }
+
+        return fetch(instance, instance.query.manipulate.searchText(text, limit), Fetch.BATCH);
+    }
+
+    // Aggregates (see Aggregate): the matching rows are counted, summed... by the database, no tuple is built
+
+    public static <T> T aggregate(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Aggregate<T> aggregate) {
+
+        if (aggregate != null && aggregate.isGrouped()) {
+            String s = "A grouped aggregate gives a value per group, use aggregateGroups(): %s";
+            throw new IllegalArgumentException(String.format(s, aggregate));
+        }
+
+        return aggregateGroups(discreteCriterias, boundedCriterias, aggregate).get(List.of());
+    }
+
+    // keyed by the values of the groupBy() attributes, ordered by them. Groups without any matching row aren't there
+    @SuppressWarnings("unchecked")
+    public static <T> Map<List<Object>,T> aggregateGroups(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Aggregate<T> aggregate) {
+
+        if (discreteCriterias == null || discreteCriterias.size() == 0 || discreteCriterias.elementAt(0) == null) {
+            String s = "Give at least one discrete criteria when aggregating!";
+            throw new IllegalArgumentException(String.format(s));
+        }
+
+        if (aggregate == null) {
+            throw new IllegalArgumentException("No aggregate given!");
+        }
+
+        Table instance = discreteCriterias.elementAt(0);
+        if (!instance.db()) {
+            String s = "No Database or no table found for the model: %s while attempting an aggregate!";
+            throw new IllegalStateException(String.format(s, instance.getClass().getSimpleName()));
+        }
+
+        var preparedQuery = instance.query.manipulate.aggregate(discreteCriterias, boundedCriterias, aggregate);
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-             PreparedStatement pstmt = conn.prepareStatement(preparedQuery.template())) {
+        try (PooledConnection conn = pool.acquire();
+             CachedStatement stmt = conn.prepare(preparedQuery.template())) {
 
-            bindValues(pstmt, preparedQuery.values());
-            tuples = fetchResutls(pstmt, instance.getClass().getSimpleName());
+            bindValues(stmt.get(), preparedQuery.values());
+            return (Map<List<Object>,T>) fetchAggregates(stmt.get(), instance.query.fields, aggregate);
 
         } catch (SQLException e) {
-            throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, preparedQuery.template()));
+            throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, preparedQuery.template()), e);
         }
+    }
+
+    private static Vector<Table> fetch(Table instance, PreparedQuery preparedQuery, Fetch fetch) {
+
+        var model = instance.getClass();
+
+        long generation = QueryCache.generation(model);
+        Vector<Table> tuples = QueryCache.get(model, preparedQuery.template(), preparedQuery.values(), fetch);
+        if (tuples != null) {
+            return tuples;
+        }
+
+        // the identity map makes every row referenced several times a single instance
+        try (IdentityMap _ = IdentityMap.open();
+             PooledConnection conn = pool.acquire();
+             CachedStatement stmt = conn.prepare(preparedQuery.template())) {
 
+            bindValues(stmt.get(), preparedQuery.values());
+            tuples = fetchResutls(stmt.get(), instance.getClass().getSimpleName(), preparedQuery.projection(), fetch);
+
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, preparedQuery.template()), e);
+        }
+
+        QueryCache.put(model, preparedQuery.template(), preparedQuery.values(), fetch, tuples, generation);
         return tuples;
     }
 
-    public int add() {
+    // Streams rows as they're read instead of loading the whole result. The stream reads through a connection
+    // of its own, given back once it's read to the end or closed, from any thread: open it in a try-with-resources.
+    // Left open, it keeps that connection until garbage collected. It doesn't see the uncommitted writes
+    // of a transaction opened by the caller, and holds a read lock that transaction has to wait for to commit
 
-        if (!isValid()) {
-            return 0;
+    public static Stream<Table> stream(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, int fetchSize) {
+
+        if (discreteCriterias == null || discreteCriterias.size() == 0 || discreteCriterias.elementAt(0) == null) {
+            String s = "Give at least one discrete criteria when streaming!";
+            throw new IllegalArgumentException(String.format(s));
         }
 
-        var preparedQuery = query.manipulate.insert();
-        int affected = 0;
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Invalid fetch size: " + fetchSize);
+        }
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-             Statement stmt = conn.createStatement();) {
+        Table instance = discreteCriterias.elementAt(0);
+        if (!instance.db()) {
+            String s = "No Database or no table found for the model: %s while attempting a search!";
+            throw new IllegalStateException(String.format(s, instance.getClass().getSimpleName()));
+        }
 
-            stmt.execute(query.define.table());
+        var preparedQuery = instance.query.manipulate.select(discreteCriterias, boundedCriterias);
+        PooledConnection conn = pool.acquireDetached();
+        CachedStatement stmt = null;
+        Cursor cursor;
+
+        try {
+            stmt = conn.prepare(preparedQuery.template());
+            bindValues(stmt.get(), preparedQuery.values());
+            cursor = new Cursor(conn, stmt, instance.getClass().getSimpleName(), preparedQuery.projection(), fetchSize);
+        } catch (SQLException | RuntimeException e) {
+            if (stmt != null) {
+                stmt.close();
+            }
+            conn.close();
+            if (e instanceof RuntimeException r) {
+                throw r;
+            }
+            throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, preparedQuery.template()), e);
+        }
 
-            var pstmt = conn.prepareStatement(preparedQuery.template());
-            bindValues(pstmt, preparedQuery.values());
-            affected = pstmt.executeUpdate();
-            pstmt.close();
+        var spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
 
-        } catch (SQLException e) {
-            throw new BugDetectedException(String.format("%s\n\nTable creation query:\n\n%s\n\nInsert: %s", e, query.define.table(), preparedQuery.template()));
+    public static Stream<Table> stream(Table discreteCriteria) {
+        Vector<Table> discreteContainer = new Vector<>();
+        discreteContainer.add(discreteCriteria);
+        return stream(discreteContainer, null, DEFAULT_FETCH_SIZE);
+    }
+
+    public static Stream<Table> stream(String className) {
+        return stream(getModelInstance(className));
+    }
+
+    public int add() {
+
+        var queued = WriteQueue.routes() ? WriteQueue.submit(this::add) : null;
+        if (queued != null) {
+            return WriteQueue.await(queued);
         }
 
-        return affected;
+        if (!isValid()) {
+            return 0;
+        }
+
+        // creating the table may wait for the write lock as well
+        var preparedQuery = query.manipulate.insert(this);
+        return Transaction.retryOnBusy(() -> {
+
+            Schema.ensure(this);
+            try (PooledConnection conn = pool.acquire();
+                 CachedStatement stmt = conn.prepare(preparedQuery.template())) {
+
+                bindValues(stmt.get(), preparedQuery.values());
+                int affected = stmt.get().executeUpdate();
+                QueryCache.invalidate(getClass());
+                return affected;
+
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nInsert: %s", e, preparedQuery.template()), e);
+            }
+        });
     }
 
     public int edit() {
 
+        var queued = WriteQueue.routes() ? WriteQueue.submit(this::edit) : null;
+        if (queued != null) {
+            return WriteQueue.await(queued);
+        }
+
         if (!db()) {
             String s = "No database or no table found for the class: %s while attempting editting!";
             throw new IllegalStateException(String.format(s, getClass().getSimpleName()));
@@ -178,54 +368,288 @@ public abstract class Table {
             return 0;
         }
 
-        var statement = query.manipulate.update();
-        int affected = 0;
+        var statement = query.manipulate.update(this);
+        return Transaction.retryOnBusy(() -> {
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-             PreparedStatement pstmt = conn.prepareStatement(statement.template())) {
+            try (PooledConnection conn = pool.acquire();
+                 CachedStatement stmt = conn.prepare(statement.template())) {
 
-            bindValues(pstmt, statement.values());
-            affected = pstmt.executeUpdate();
+                bindValues(stmt.get(), statement.values());
+                int affected = stmt.get().executeUpdate();
+                QueryCache.invalidate(getClass());
+                return affected;
 
-        } catch (SQLException e) {
-            throw new BugDetectedException(String.format("%s\n\nUpdating query: %s", e, statement.template()));
-        }
-
-        return affected;
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nUpdating query: %s", e, statement.template()), e);
+            }
+        });
     }
 
+    // the cascade and the deletion itself are committed together, or not at all
     public int delete() {
 
+        var queued = WriteQueue.routes() ? WriteQueue.submit(this::delete) : null;
+        if (queued != null) {
+            return WriteQueue.await(queued);
+        }
+
         if (!db()) {
             String s = "No database or no table found while attempting deletion for class: %s";
             throw new IllegalStateException(String.format(s, getClass().getSimpleName()));
         }
 
-        if (!reflect.cascadeDeletion()) {
-            String s = "Faillure to cascade deletion on this %s:\n\n%s";
-            throw new BugDetectedException(String.format(s, getClass().getSimpleName(), this));
+        return inTransaction(() -> {
+
+            if (!reflect.cascadeDeletion()) {
+                String s = "Faillure to cascade deletion on this %s:\n\n%s";
+                throw new BugDetectedException(String.format(s, getClass().getSimpleName(), this));
+            }
+
+            if (id == null) {
+                return 0;
+            }
+
+            var statement = query.manipulate.delete(this);
+            int affected = 0;
+
+            try (PooledConnection conn = pool.acquire();
+                 CachedStatement stmt = conn.prepare(statement.template())) {
+
+                bindValues(stmt.get(), statement.values());
+                affected = stmt.get().executeUpdate();
+                QueryCache.invalidate(getClass());
+
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nDeletion query: %s", e, statement.template()), e);
+            }
+
+            return affected;
+        });
+    }
+
+    // Asynchronous CRUD, see Async: searches run in parallel, writes one at a time
+
+    public static CompletableFuture<Vector<Table>> searchAsync(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias) {
+        return Async.read(() -> search(discreteCriterias, boundedCriterias));
+    }
+
+    public static CompletableFuture<Vector<Table>> searchAsync(Vector<? extends Table> discreteCriterias, Vector<Range> boundedCriterias, Page page) {
+        return Async.read(() -> search(discreteCriterias, boundedCriterias, page));
+    }
+
+    public static CompletableFuture<Vector<Table>> searchAsync(Table discreteCriteria) {
+        return Async.read(() -> search(discreteCriteria));
+    }
+
+    public static CompletableFuture<Vector<Table>> searchTextAsync(String modelName, String text, int limit) {
+        return Async.read(() -> searchText(modelName, text, limit));
+    }
+
+    public CompletableFuture<Integer> addAsync() {
+        return Async.write(this::add);
+    }
+
+    public CompletableFuture<Integer> editAsync() {
+        return Async.write(this::edit);
+    }
+
+    public CompletableFuture<Integer> deleteAsync() {
+        return Async.write(this::delete);
+    }
+
+    // Transactions: every operation made by the work shares one connection and one commit
+
+    public static void inTransaction(Runnable work) {
+        inTransaction(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // when SQLite reports the database busy, the whole unit of work is rolled back and run again
+    public static <T> T inTransaction(Supplier<T> work) {
+        return Transaction.retryOnBusy(() -> {
+            try (Transaction tx = Transaction.begin()) {
+                T result = work.get();
+                tx.commit();
+                return result;
+            }
+        });
+    }
+
+    // Batched CRUD: rows are grouped by model, sent through JDBC batches and committed once
+
+    public static int addAll(Collection<? extends Table> tuples) {
+
+        var byModel = groupByModel(tuples);
+        return inOneCommit(conn -> {
+
+            // missing tables are created in the batch's transaction, retried with it
+            for (var group : byModel.values()) {
+                Schema.ensure(group.get(0));
+            }
+
+            int affected = 0;
+            for (var group : byModel.values()) {
+
+                var rows = new ArrayList<Vector<Object>>();
+                for (Table tuple : group) {
+                    if (tuple.isValid()) {
+                        rows.add(tuple.query.manipulate.insertValues(tuple));
+                    }
+                }
+
+                affected += executeBatch(conn, group.get(0).query.manipulate.insertTemplate(), rows);
+                QueryCache.invalidate(group.get(0).getClass());
+            } return affected;
+        });
+    }
+
+    public static int editAll(Collection<? extends Table> tuples) {
+
+        var byModel = groupByModel(tuples);
+        for (var group : byModel.values()) {
+            if (!group.get(0).db()) {
+                String s = "No database or no table found for the class: %s while attempting editting!";
+                throw new IllegalStateException(String.format(s, group.get(0).getClass().getSimpleName()));
+            }
         }
 
-        if (id == null) {
-            return 0;
+        return inOneCommit(conn -> {
+            int affected = 0;
+            for (var group : byModel.values()) {
+
+                // the SET clause skips null attributes, so rows are batched per statement shape
+                var byTemplate = new LinkedHashMap<String,List<Vector<Object>>>();
+                for (Table tuple : group) {
+                    if (tuple.isValid() && tuple.id != null) {
+                        var statement = tuple.query.manipulate.update(tuple);
+                        byTemplate.computeIfAbsent(statement.template(), _ -> new ArrayList<>()).add(statement.values());
+                    }
+                }
+
+                for (var entry : byTemplate.entrySet()) {
+                    affected += executeBatch(conn, entry.getKey(), entry.getValue());
+                }
+                QueryCache.invalidate(group.get(0).getClass());
+            } return affected;
+        });
+    }
+
+    public static int deleteAll(Collection<? extends Table> tuples) {
+
+        var byModel = groupByModel(tuples);
+        for (var group : byModel.values()) {
+            if (!group.get(0).db()) {
+                String s = "No database or no table found while attempting deletion for class: %s";
+                throw new IllegalStateException(String.format(s, group.get(0).getClass().getSimpleName()));
+            }
         }
 
-        String sql = String.format("DELETE FROM %s WHERE id=?", query.tableName);
-        int affected = 0;
+        // a tuple deleted by the cascade of another one counts as deleted: the count is of the given
+        // tuples having a row before the cascades, all of them gone once the batch commits
+        return inOneCommit(conn -> {
+            int deleted = 0;
+            for (var group : byModel.values()) {
+                deleted += countExisting(conn, group);
+            }
+
+            for (var group : byModel.values()) {
+
+                var rows = new ArrayList<Vector<Object>>();
+                for (Table tuple : group) {
+
+                    // cascades run on this same connection, so they are part of the commit
+                    if (!tuple.reflect.cascadeDeletion()) {
+                        String s = "Faillure to cascade deletion on this %s:\n\n%s";
+                        throw new BugDetectedException(String.format(s, tuple.getClass().getSimpleName(), tuple));
+                    }
+
+                    if (tuple.id != null) {
+                        rows.add(tuple.query.manipulate.delete(tuple).values());
+                    }
+                }
+
+                executeBatch(conn, group.get(0).query.manipulate.delete(group.get(0)).template(), rows);
+                QueryCache.invalidate(group.get(0).getClass());
+            } return deleted;
+        });
+    }
+
+    // distinct ids only, a tuple given twice is deleted once
+    private static int countExisting(PooledConnection conn, List<Table> group) {
+
+        var ids = group.stream().map(tuple -> tuple.id).filter(Objects::nonNull).distinct().toList();
+        var define = group.get(0).query.define;
+
+        int count = 0;
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_COUNT) {
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-            PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            var chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_COUNT, ids.size()));
+            String template = define.countIds(chunk.size());
 
-            pstmt.setInt(1, this.id);
-            affected = pstmt.executeUpdate();
+            try (CachedStatement stmt = conn.prepare(template)) {
+                bindValues(stmt.get(), new Vector<>(chunk));
+                try (ResultSet rs = stmt.get().executeQuery()) {
+                    count += rs.next() ? rs.getInt(1) : 0;
+                }
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, template), e);
+            }
+        } return count;
+    }
+
+    private static Map<Class<? extends Table>,List<Table>> groupByModel(Collection<? extends Table> tuples) {
+        var byModel = new LinkedHashMap<Class<? extends Table>,List<Table>>();
+        for (Table tuple : tuples) {
+            byModel.computeIfAbsent(tuple.getClass(), _ -> new ArrayList<>()).add(tuple);
+        } return byModel;
+    }
+
+    private static int executeBatch(PooledConnection conn, String template, List<Vector<Object>> rows) {
 
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        int affected = 0;
+        try (CachedStatement stmt = conn.prepare(template)) {
+            for (var values : rows) {
+                bindValues(stmt.get(), values);
+                stmt.get().addBatch();
+            }
+            for (int count : stmt.get().executeBatch()) {
+                affected += Math.max(count, 0);
+            }
         } catch (SQLException e) {
-            throw new BugDetectedException(String.format("%s\n\nDeletion query: %s", e, sql));
+            throw new BugDetectedException(String.format("%s\n\nBatched query: %s", e, template), e);
         }
 
         return affected;
     }
 
+    // runs the work on one connection with a single commit, or as a savepoint of the caller's transaction
+    private static int inOneCommit(BatchWork work) {
+        return Transaction.retryOnBusy(() -> {
+
+            try (Transaction tx = Transaction.begin();
+                 PooledConnection conn = pool.acquire()) {
+
+                int affected = work.run(conn);
+                tx.commit();
+                return affected;
+
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nWhile committing a batch", e), e);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface BatchWork {
+        public int run(PooledConnection conn) throws SQLException;
+    }
+
     // Verification methods
 
     static public boolean dbFile() {
@@ -235,35 +659,17 @@ public abstract class Table {
 
     // checks if there's a DB and that the SQLite table is created
     public boolean db() {
-
-        if (!dbFile()) {
-            return false;
-        }
-
-        String checkTable = "SELECT name FROM sqlite_master WHERE type='table' AND name='%s';";
-        boolean ans = false;
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(String.format(checkTable, query.tableName))) {
-
-            ans = rs.next();
-
-        } catch (SQLException e) {
-            error(e);
-            throw new BugDetectedException("Bad SQLite!");
-        }
-
-        return ans;
+        return Schema.exists(query.tableName);
     }
 
     // checks if there are any non-nullable attributes that are, well, null
     public boolean isValid() {
 
+        FieldInfos fields = query.fields;
         boolean valid = true;
-        for (int i=1;i<reflect.fields.count;i++) {
-            Constraints col = reflect.fields.constraints[i];
-            if (!col.nullable() && reflect.fields.get(i) == null) {
+        for (int i=1;i<fields.count;i++) {
+            Constraints col = fields.constraints[i];
+            if (!col.nullable() && fields.get(this, i) == null) {
                 valid = false;
                 break;
             }
@@ -287,7 +693,7 @@ public abstract class Table {
 
     // wrapper arround the db()
     public static boolean isSearchable(String modelName) {
-        return getModelInstance(modelName).db();
+        return Schema.exists(SQLiteQueryConstructor.tableName(modelName));
     }
 
     // Utilities
@@ -306,25 +712,82 @@ public abstract class Table {
         }
     }
 
-    // Getting all the different values a specific attribute can take
+    // Getting all the different values a specific attribute can take, read from the column
+    // alone (SELECT DISTINCT), and kept by the QueryCache until the model is written to
     public Set<String> getAttributeValues(String att) {
 
-        if (!reflect.fields.constraintsOf(att).enumerated()) {
+        if (!query.fields.constraintsOf(att).enumerated()) {
             String s = "Attempting to get the values of an attribute that is not enumerated: %s";
             throw new IllegalArgumentException(String.format(s, att));
         }
 
-        Set<String> values = new HashSet<>();
-        var tuples = search(getClass().getSimpleName());
-        for (var tuple : tuples) {
-            values.add((String)tuple.reflect.fields.get(att));
-        } return values;
+        var model = getClass();
+        Set<String> values = QueryCache.attributeValues(model, att);
+        if (values != null) {
+            return new HashSet<>(values);
+        }
+
+        if (!db()) {
+            String s = "No Database or no table found for the model: %s while attempting a search!";
+            throw new IllegalStateException(String.format(s, model.getSimpleName()));
+        }
+
+        long generation = QueryCache.attributeValuesGeneration(model);
+        String template = query.define.distinct(att);
+        values = new HashSet<>();
+
+        try (PooledConnection conn = pool.acquire();
+             CachedStatement stmt = conn.prepare(template);
+             ResultSet rs = stmt.get().executeQuery()) {
+
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nFor Query: %s", e, template), e);
+        }
+
+        QueryCache.putAttributeValues(model, att, values, generation);
+        return values;
+    }
+
+    // Connection pool
+
+    public static ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool.stats();
+    }
+
+    // closes every pooled connection, any later CRUD operation will throw
+    public static void shutdown() {
+        WriteQueue.disable();
+        pool.close();
+    }
+
+    private static int intFromEnv(String name, int defaultValue) {
+
+        String value = System.getenv(name);
+        if (value == null || value.equals("")) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s: %s", name, value));
+        }
     }
 
     // Model-related methods
 
     protected static void registerModel(Class<? extends Table> model) {
-        models.add(model);
+        if (models.add(model)) {
+            QueryCache.modelRegistered();
+        }
     }
 
     public static Set<Class<? extends Table>> getModels() {
@@ -353,10 +816,42 @@ public abstract class Table {
         return search(discreteCriteria, null, null, null);
     }
 
+    public static Vector<Table> search(Table discreteCriteria, Page page) {
+        Vector<Table> discreteContainer = new Vector<>();
+        discreteContainer.add(discreteCriteria);
+        return search(discreteContainer, null, page);
+    }
+
+    public static Vector<Table> search(Table discreteCriteria, Fetch fetch) {
+        Vector<Table> discreteContainer = new Vector<>();
+        discreteContainer.add(discreteCriteria);
+        return search(discreteContainer, null, fetch);
+    }
+
     public static Vector<Table> search(Vector<? extends Table> discreteCriterias) {
         return search(discreteCriterias, null);
     }
 
+    public static <T> T aggregate(String modelName, Aggregate<T> aggregate) {
+        return aggregate(getModelInstance(modelName), aggregate);
+    }
+
+    public static <T> T aggregate(Table discreteCriteria, Aggregate<T> aggregate) {
+        Vector<Table> discreteContainer = new Vector<>();
+        discreteContainer.add(discreteCriteria);
+        return aggregate(discreteContainer, null, aggregate);
+    }
+
+    public static <T> Map<List<Object>,T> aggregateGroups(String modelName, Aggregate<T> aggregate) {
+        return aggregateGroups(getModelInstance(modelName), aggregate);
+    }
+
+    public static <T> Map<List<Object>,T> aggregateGroups(Table discreteCriteria, Aggregate<T> aggregate) {
+        Vector<Table> discreteContainer = new Vector<>();
+        discreteContainer.add(discreteCriteria);
+        return aggregateGroups(discreteContainer, null, aggregate);
+    }
+
     public static Vector<Table> search(Table discrete, String boundedName, Object lowerBound, Object upperBound) {
 
         Vector<Table> discreteContainer = new Vector<>();
@@ -407,4 +902,207 @@ public abstract class Table {
                 && fields.bounded.contains(attributeName);
         }
     }
+
+    // Used to read results page by page: ordered on an attribute (then the id) and limited,
+    // each next page seeks past the previous one's last row instead of scanning an OFFSET
+    static public class Page {
+
+        private final String orderBy;
+        private final boolean descending;
+        private final int size;
+
+        private final Object lastKey;
+        private final Integer lastId;
+
+        private Page(String orderBy, boolean descending, int size, Object lastKey, Integer lastId) {
+            this.orderBy = orderBy;
+            this.descending = descending;
+            this.size = size;
+            this.lastKey = lastKey;
+            this.lastId = lastId;
+        }
+
+        public static Page first(int size) {
+            return new Page("id", false, size, null, null);
+        }
+
+        // the ordering attribute can't be nullable, rows with a null key couldn't be seeked past
+        public Page orderBy(String attributeName) {
+            return new Page(attributeName, descending, size, null, null);
+        }
+
+        public Page descending() {
+            return new Page(orderBy, true, size, null, null);
+        }
+
+        public Page after(Table lastTuple) {
+            return new Page(orderBy, descending, size, lastTuple.reflect.fields.get(orderBy), lastTuple.getId());
+        }
+
+        // null once the previous page came back incomplete, meaning it was the last one
+        public Page next(Vector<? extends Table> previousPage) {
+            if (previousPage.size() < size) {
+                return null;
+            } return after(previousPage.lastElement());
+        }
+
+        public String orderBy() {
+            return orderBy;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isAfterKey() {
+            return lastId != null;
+        }
+
+        Object lastKey() {
+            return lastKey;
+        }
+
+        Integer lastId() {
+            return lastId;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s rows by %s%s after %s", size, orderBy, descending ? " DESC" : "", lastId == null ? "nothing" : "(" + lastKey + ", " + lastId + ")");
+        }
+
+        public boolean isValidCriteriaFor(Reflection r) {
+            return isValidCriteriaFor(r.fields);
+        }
+
+        public boolean isValidCriteriaFor(FieldInfos fields) {
+            return
+                size > 0 && orderBy != null
+                && Arrays.asList(fields.names).contains(orderBy)
+                && (orderBy.equals("id") || !fields.constraintsOf(orderBy).nullable())
+                && (lastId == null || orderBy.equals("id") || lastKey != null);
+        }
+    }
+
+    // What aggregate() computes over the matching rows, optionally per group of values:
+    //
+    //     Table.aggregate(criteria, Aggregate.count());
+    //     Table.aggregateGroups("Payment", Aggregate.sum("amount").groupBy("reservation"));
+    //
+    // COUNT always gives a Long (foreign keys counted too), SUM a Long over integers and a Double otherwise,
+    // AVG a Double and MIN/MAX a value of the type they're given, checked against the attribute's.
+    // The values grouped on are those of the attributes, a Ref for a foreign key
+    static public class Aggregate<T> {
+
+        public enum Function { COUNT, SUM, MIN, MAX, AVG }
+
+        private final Function function;
+        private final String attributeName;
+        private final List<String> groupBy;
+        private final Class<T> type;
+
+        private Aggregate(Function function, String attributeName, List<String> groupBy, Class<T> type) {
+            this.function = function;
+            this.attributeName = attributeName;
+            this.groupBy = groupBy;
+            this.type = type;
+        }
+
+        public static Aggregate<Long> count() {
+            return new Aggregate<>(Function.COUNT, null, List.of(), Long.class);
+        }
+
+        // the rows where the attribute isn't null
+        public static Aggregate<Long> count(String attributeName) {
+            return new Aggregate<>(Function.COUNT, attributeName, List.of(), Long.class);
+        }
+
+        public static Aggregate<Number> sum(String attributeName) {
+            return new Aggregate<>(Function.SUM, attributeName, List.of(), Number.class);
+        }
+
+        // Aggregate.min("startDate", LocalDate.class)
+        public static <T> Aggregate<T> min(String attributeName, Class<T> type) {
+            return new Aggregate<>(Function.MIN, attributeName, List.of(), type);
+        }
+
+        public static <T> Aggregate<T> max(String attributeName, Class<T> type) {
+            return new Aggregate<>(Function.MAX, attributeName, List.of(), type);
+        }
+
+        public static Aggregate<Double> avg(String attributeName) {
+            return new Aggregate<>(Function.AVG, attributeName, List.of(), Double.class);
+        }
+
+        public Aggregate<T> groupBy(String... attributeNames) {
+            return new Aggregate<>(function, attributeName, List.of(attributeNames), type);
+        }
+
+        public Function function() {
+            return function;
+        }
+
+        public String attributeName() {
+            return attributeName;
+        }
+
+        public List<String> groupBy() {
+            return groupBy;
+        }
+
+        public Class<T> type() {
+            return type;
+        }
+
+        public boolean isGrouped() {
+            return !groupBy.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return function + "(" + (attributeName == null ? "*" : attributeName) + ")" + (isGrouped() ? " by " + groupBy : "");
+        }
+
+        // part of the select's shape, the type doesn't change the SQL
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Aggregate<?> aggregate
+                && function == aggregate.function
+                && Objects.equals(attributeName, aggregate.attributeName)
+                && groupBy.equals(aggregate.groupBy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(function, attributeName, groupBy);
+        }
+
+        public boolean isValidCriteriaFor(Reflection r) {
+            return isValidCriteriaFor(r.fields);
+        }
+
+        // SUM and AVG only make sense over numbers, MIN and MAX over values (not foreign keys) of their type
+        public boolean isValidCriteriaFor(FieldInfos fields) {
+
+            List<String> names = Arrays.asList(fields.names);
+            if (!names.containsAll(groupBy)) {
+                return false;
+            }
+
+            if (attributeName == null || !names.contains(attributeName)) {
+                return attributeName == null && function == Function.COUNT;
+            }
+
+            return switch (function) {
+                case COUNT -> true;
+                case SUM, AVG -> Number.class.isAssignableFrom(fields.typeOf(attributeName));
+                case MIN, MAX -> !fields.isAggregation(fields.indexOf(attributeName)) && type != null
+                    && type.isAssignableFrom(Reflection.boxed(fields.typeOf(attributeName)));
+            };
+        }
+    }
 }
@@ -0,0 +1,196 @@
+package orm;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import orm.ConnectionPool.PooledConnection;
+import orm.util.BugDetectedException;
+
+// Binds one pooled connection to the current thread for the whole unit of work, so every
+// CRUD call and cascade made in between joins the same commit. Nested transactions are savepoints.
+// A transaction is a unit of work that writes: it takes SQLite's write lock when it begins
+public class Transaction implements AutoCloseable {
+
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    private static final int BUSY_RETRIES = 5;
+    private static final long BUSY_BACKOFF_MILLIS = 10;
+
+    private final PooledConnection conn;
+    private final Transaction parent;
+    private final Savepoint savepoint;
+
+    private boolean done = false;
+    private boolean ddl = false;
+    private final Set<Class<? extends Table>> written = new HashSet<>();
+
+    private Transaction(PooledConnection conn, Transaction parent, Savepoint savepoint) {
+        this.conn = conn;
+        this.parent = parent;
+        this.savepoint = savepoint;
+    }
+
+    public static Transaction begin() {
+
+        Transaction parent = current.get();
+        PooledConnection conn = Table.getConnectionPool().acquire();
+
+        try {
+            Transaction tx;
+            if (parent == null) {
+                conn.begin(true);
+                tx = new Transaction(conn, null, null);
+            } else {
+                tx = new Transaction(conn, parent, conn.connection().setSavepoint("sp" + depth(parent)));
+            }
+            current.set(tx);
+            return tx;
+        } catch (SQLException e) {
+            conn.close();
+            throw new BugDetectedException(String.format("%s\n\nWhile beginning a transaction", e), e);
+        }
+    }
+
+    // Runs the work again while SQLite reports the database busy, backing off a bit more each time.
+    // Inside a transaction it runs once, the busy error ends the enclosing unit of work, the one retried
+    static <T> T retryOnBusy(Supplier<T> work) {
+
+        if (isActive()) {
+            return work.get();
+        }
+
+        for (int attempt=1;;attempt++) {
+            try {
+                return work.get();
+            } catch (RuntimeException e) {
+                if (!ConnectionPool.isBusy(e)) {
+                    throw e;
+                }
+                if (attempt > BUSY_RETRIES) {
+                    String s = "The database is still locked after %s attempts!";
+                    throw new IllegalStateException(String.format(s, attempt), e);
+                }
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, (BUSY_BACKOFF_MILLIS << attempt) + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the database to be unlocked!", e);
+                }
+            }
+        }
+    }
+
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    public boolean isNested() {
+        return parent != null;
+    }
+
+    public void commit() {
+
+        checkOpen();
+        try {
+            if (parent == null) {
+                conn.connection().commit();
+            } else {
+                conn.connection().releaseSavepoint(savepoint);
+                parent.ddl = parent.ddl || ddl;
+            }
+        } catch (SQLException e) {
+            rollback();
+            throw new BugDetectedException(String.format("%s\n\nWhile committing a transaction", e), e);
+        }
+        end();
+    }
+
+    public void rollback() {
+
+        checkOpen();
+        try {
+            if (parent == null) {
+                conn.connection().rollback();
+            } else {
+                conn.connection().rollback(savepoint);
+                conn.connection().releaseSavepoint(savepoint);
+            }
+        } catch (SQLException e) {
+            throw new BugDetectedException(String.format("%s\n\nWhile rolling back a transaction", e), e);
+        } finally {
+            // tables created in between are gone again
+            if (ddl) {
+                Schema.invalidate();
+            }
+            end();
+        }
+    }
+
+    // rolls back whatever wasn't committed
+    @Override
+    public void close() {
+        if (!done) {
+            rollback();
+        }
+    }
+
+    // models written in the transaction get their cached queries dropped again once it ends,
+    // other threads could have cached what was committed before
+    static void written(Class<? extends Table> model) {
+        Transaction tx = current.get();
+        if (tx != null) {
+            tx.written.add(model);
+        }
+    }
+
+    // called by Schema when it issues DDL, which SQLite undoes on rollback
+    static void markDdl() {
+        Transaction tx = current.get();
+        if (tx != null) {
+            tx.ddl = true;
+        }
+    }
+
+    private void checkOpen() {
+        if (done) {
+            throw new IllegalStateException("This transaction is already committed or rolled back!");
+        }
+        if (current.get() != this) {
+            throw new IllegalStateException("A nested transaction must end before the one enclosing it!");
+        }
+    }
+
+    private void end() {
+
+        done = true;
+        if (parent == null) {
+            current.remove();
+            try {
+                conn.connection().setAutoCommit(true);
+            } catch (SQLException e) {
+                throw new BugDetectedException(String.format("%s\n\nWhile ending a transaction", e), e);
+            } finally {
+                conn.close();
+                for (var model : written) {
+                    QueryCache.invalidate(model);
+                }
+            }
+        } else {
+            current.set(parent);
+            parent.written.addAll(written);
+            conn.close();
+        }
+    }
+
+    private static int depth(Transaction tx) {
+        int depth = 0;
+        for (; tx != null; tx = tx.parent) {
+            depth++;
+        } return depth;
+    }
+}
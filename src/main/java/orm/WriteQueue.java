@@ -0,0 +1,251 @@
+package orm;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static orm.util.Console.error;
+
+// Opt-in write pipeline: add(), edit() and delete() calls (and their async versions) are queued
+// and one writer thread commits them in groups, of up to maxBatch operations gathered for at most maxLatency:
+//
+//     WriteQueue.enable(256, Duration.ofMillis(2));
+//
+// Each operation gets its own savepoint, a failing one doesn't undo the rest of its group.
+// The database being busy isn't a failure of the operation: the whole group is run again, as direct writes are.
+// Callers get their result once the whole group is committed, so writes stay durable.
+// Writes made inside a transaction don't go through the queue, nor do the batched addAll(), editAll()...
+public class WriteQueue {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static volatile WriteQueue current;
+
+    private final int maxBatch;
+    private final long maxLatency;
+    private final BlockingQueue<Pending<?>> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private boolean stopping = false;
+
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private WriteQueue(int maxBatch, Duration maxLatency) {
+        this.maxBatch = maxBatch;
+        this.maxLatency = maxLatency.toNanos();
+        this.writer = Thread.ofPlatform().name("orm-writer").daemon().start(this::drain);
+    }
+
+    public static synchronized void enable(int maxBatch, Duration maxLatency) {
+
+        if (maxBatch < 1 || maxLatency == null || maxLatency.isNegative()) {
+            String s = "Invalid write queue configuration: (maxBatch, maxLatency) = (%s, %s)";
+            throw new IllegalArgumentException(String.format(s, maxBatch, maxLatency));
+        }
+
+        disable();
+        current = new WriteQueue(maxBatch, maxLatency);
+    }
+
+    // waits for the operations already queued to be committed
+    public static synchronized void disable() {
+        if (current != null) {
+            current.stop();
+            current = null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return current != null;
+    }
+
+    public static Stats stats() {
+        WriteQueue queue = current;
+        return queue == null ? null : new Stats(queue.groups.get(), queue.operations.get(), queue.failures.get(), queue.pending.size());
+    }
+
+    public record Stats(long groups, long operations, long failures, int pending) {
+
+        public double averageGroupSize() {
+            return groups == 0 ? 0 : (double) operations / groups;
+        }
+
+        @Override
+        public String toString() {
+            String s = "Write queue: %s operations in %s groups (%.1f per commit), %s failures, %s pending";
+            return String.format(s, operations, groups, averageGroupSize(), failures, pending);
+        }
+    }
+
+    // synchronous writes go through the queue unless they're part of a transaction (the writer's groups
+    // included), or the thread holds a connection the writer could be waiting for (an open stream...)
+    static boolean routes() {
+        return current != null && !Transaction.isActive() && !Table.getConnectionPool().isHeld();
+    }
+
+    // null when the queue is disabled, or being disabled since routes() said otherwise: the caller writes itself
+    static <T> CompletableFuture<T> submit(Supplier<T> work) {
+
+        WriteQueue queue = current;
+        if (queue == null) {
+            return null;
+        }
+
+        Pending<T> operation = new Pending<>(work);
+        synchronized (queue) {
+            if (queue.stopping) {
+                return null;
+            }
+            queue.pending.add(operation);
+        }
+
+        return operation.future();
+    }
+
+    // blocks the synchronous caller, its exceptions are thrown as they would have been without the queue
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof Error cause) {
+                throw cause;
+            } throw e;
+        }
+    }
+
+    private void stop() {
+
+        synchronized (this) {
+            stopping = true;
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+
+        List<Pending<?>> group = new ArrayList<>(maxBatch);
+        while (true) {
+
+            Pending<?> first = poll(TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS));
+            if (first == null) {
+                synchronized (this) {
+                    if (stopping && pending.isEmpty()) {
+                        return;
+                    }
+                } continue;
+            }
+
+            group.add(first);
+            long deadline = System.nanoTime() + maxLatency;
+            while (group.size() < maxBatch) {
+                Pending<?> next = poll(deadline - System.nanoTime());
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+            }
+
+            commit(group);
+            group.clear();
+        }
+    }
+
+    // An interrupted writer stops waiting, and stops like disable() does: what's queued is still committed,
+    // new writes are made by their callers. The interrupt is kept for whoever runs the thread
+    private Pending<?> poll(long nanos) {
+
+        if (!Thread.currentThread().isInterrupted()) {
+            try {
+                return nanos > 0 ? pending.poll(nanos, TimeUnit.NANOSECONDS) : pending.poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            stopping = true;
+        } return pending.poll();
+    }
+
+    // the callers are only answered once the group is committed
+    private void commit(List<Pending<?>> group) {
+
+        List<Runnable> answers = new ArrayList<>(group.size());
+        try {
+            // run again from the start if SQLite reports the database busy
+            Transaction.retryOnBusy(() -> {
+                answers.clear();
+                try (Transaction tx = Transaction.begin()) {
+                    for (Pending<?> operation : group) {
+                        answers.add(operation.run());
+                    }
+                    tx.commit();
+                } return null;
+            });
+        } catch (RuntimeException | Error e) {
+            error("Group commit of %s operations failed: %s", group.size(), e);
+            for (Pending<?> operation : group) {
+                operation.future().completeExceptionally(e);
+            }
+            failures.addAndGet(group.size());
+            return;
+        }
+
+        groups.incrementAndGet();
+        operations.addAndGet(group.size());
+        for (Pending<?> operation : group) {
+            if (operation.failed) {
+                failures.incrementAndGet();
+            }
+        }
+        answers.forEach(Runnable::run);
+    }
+
+    private static class Pending<T> {
+
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private boolean failed = false;
+
+        Pending(Supplier<T> work) {
+            this.work = work;
+        }
+
+        CompletableFuture<T> future() {
+            return future;
+        }
+
+        // in its own savepoint, gives how to answer the caller once committed
+        Runnable run() {
+            failed = false;
+            try (Transaction savepoint = Transaction.begin()) {
+                T result = work.get();
+                savepoint.commit();
+                return () -> future.complete(result);
+            } catch (RuntimeException e) {
+                // the database being busy isn't the operation's failure, the whole group is run again
+                if (ConnectionPool.isBusy(e)) {
+                    throw e;
+                }
+                failed = true;
+                return () -> future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package orm.util;
 
 public class BugDetectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
     public BugDetectedException(String message) {
         super(message);
     }
+
+    public BugDetectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 
@@ -14,7 +15,7 @@ import static orm.util.Console.*;
 
 public class Database {
 
-    private static Map<Aggregation,Integer> occurences = new HashMap<>();
+    private static final Map<Aggregation,Integer> occurences = new ConcurrentHashMap<>();
     private static String path = System.getenv("SAMPLE_PATH");
 
 
@@ -47,24 +48,18 @@ public class Database {
     }
 
     public static boolean input(Vector<? extends Table> tuples) {
-        boolean success = true;
-        for (Table tuple : tuples) {
-            success = success && tuple.add() >= 1;
-        } return success;
+        return Table.addAll(tuples) == tuples.size();
     }
 
+    // true when every tuple had a row, including those deleted by the cascade of another one
     public static boolean delete(Vector<? extends Table> tuples) {
-        boolean success = true;
-        for (Table tuple : tuples) {
-            success = success && tuple.delete() >= 1;
-        } return success;
+        return Table.deleteAll(tuples) == tuples.size();
     }
 
     private static Table getSample(String ofThisModel, String forThisModel) {
 
         var key = new Aggregation(ofThisModel, forThisModel);
-        int index = occurences.computeIfAbsent(key, k -> 0);
-        occurences.put(key, index+1);
+        int index = occurences.merge(key, 1, Integer::sum) - 1;
 
         return Table.search(ofThisModel).elementAt(index);
     }
@@ -0,0 +1,51 @@
+package models;
+
+import orm.Constraints;
+import orm.Table;
+
+public class Client extends Table {
+
+    static {
+        registerModel(Client.class);
+    }
+
+    @Constraints(type = "TEXT", nullable = false, searchedText = true, fullText = true)
+    private String name;
+
+    @Constraints(type = "TEXT", searchedText = true)
+    private String surname;
+
+    @Constraints(type = "TEXT", enumerated = true, indexed = true, indexWhere = "kind IS NOT NULL")
+    private String kind;
+
+    public Client() {}
+
+    public Client(String name, String surname) {
+        this.name = name;
+        this.surname = surname;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public void setSurname(String surname) {
+        this.surname = surname;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+}
@@ -0,0 +1,46 @@
+package models;
+
+import orm.Constraints;
+import orm.Table;
+
+public class Payment extends Table {
+
+    static {
+        registerModel(Payment.class);
+    }
+
+    @Constraints(type = "INTEGER", nullable = false, foreignKey = true)
+    Reservation reservation;
+
+    @Constraints(type = "REAL", bounded = true)
+    Double amount;
+
+    @Constraints(type = "INTEGER")
+    Integer installments;
+
+    public Payment() {}
+
+    public Reservation getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Double amount) {
+        this.amount = amount;
+    }
+
+    public Integer getInstallments() {
+        return installments;
+    }
+
+    public void setInstallments(Integer installments) {
+        this.installments = installments;
+    }
+}
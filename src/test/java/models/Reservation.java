@@ -0,0 +1,70 @@
+package models;
+
+import java.time.LocalDate;
+
+import orm.Constraints;
+import orm.Table;
+
+public class Reservation extends Table {
+
+    static {
+        registerModel(Reservation.class);
+    }
+
+    @Constraints(type = "INTEGER", nullable = false, foreignKey = true)
+    private Client client;
+
+    @Constraints(type = "INTEGER", foreignKey = true)
+    private Vehicle vehicle;
+
+    @Constraints(type = "TEXT", lowerBound = true, boundedPair = "endDate", intervalIndex = true, index = "status_start")
+    private LocalDate startDate;
+
+    @Constraints(type = "TEXT", upperBound = true)
+    private LocalDate endDate;
+
+    @Constraints(type = "TEXT", enumerated = true, index = "status_start")
+    private String status;
+
+    public Reservation() {}
+
+    public Client getClient() {
+        return client;
+    }
+
+    public void setClient(Client client) {
+        this.client = client;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public void setVehicle(Vehicle vehicle) {
+        this.vehicle = vehicle;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = stringToDate(startDate);
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = stringToDate(endDate);
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
@@ -0,0 +1,36 @@
+package models;
+
+import orm.Constraints;
+import orm.Ref;
+import orm.Table;
+
+public class Return extends Table {
+
+    static {
+        registerModel(Return.class);
+    }
+
+    @Constraints(type = "INTEGER", nullable = false, foreignKey = true)
+    Ref<Reservation> reservation;
+
+    @Constraints(type = "TEXT")
+    String note;
+
+    public Return() {}
+
+    public Ref<Reservation> getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(Ref<Reservation> reservation) {
+        this.reservation = reservation;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+}
@@ -0,0 +1,28 @@
+package models;
+
+import orm.Constraints;
+import orm.Table;
+
+// only loaded, and so registered, by QueryCacheTest once the other models are in use
+public class Review extends Table {
+
+    static {
+        registerModel(Review.class);
+    }
+
+    @Constraints(type = "INTEGER", foreignKey = true)
+    Vehicle vehicle;
+
+    @Constraints(type = "TEXT")
+    String text;
+
+    public Review() {}
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public void setVehicle(Vehicle vehicle) {
+        this.vehicle = vehicle;
+    }
+}
@@ -0,0 +1,24 @@
+package models;
+
+import orm.Constraints;
+import orm.Table;
+
+public class User extends Table {
+
+    static {
+        registerModel(User.class);
+    }
+
+    @Constraints(type = "TEXT", unique = true)
+    private String note;
+
+    public User() {}
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+}
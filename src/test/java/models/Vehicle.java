@@ -0,0 +1,52 @@
+package models;
+
+import orm.Constraints;
+import orm.Table;
+
+public class Vehicle extends Table {
+
+    static {
+        registerModel(Vehicle.class);
+    }
+
+    @Constraints(type = "TEXT", nullable = false, searchedText = true)
+    String brand;
+
+    @Constraints(type = "TEXT", enumerated = true)
+    String fuel;
+
+    @Constraints(type = "REAL", bounded = true)
+    Double price;
+
+    public Vehicle() {}
+
+    public Vehicle(String brand, String fuel, Double price) {
+        this.brand = brand;
+        this.fuel = fuel;
+        this.price = price;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public void setBrand(String brand) {
+        this.brand = brand;
+    }
+
+    public String getFuel() {
+        return fuel;
+    }
+
+    public void setFuel(String fuel) {
+        this.fuel = fuel;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public void setPrice(Double price) {
+        this.price = price;
+    }
+}
@@ -0,0 +1,68 @@
+package orm;
+
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessorsTest {
+
+    // a model mapped through reflection only, whose setter fails on its own
+    static class Strict extends Table {
+
+        @Constraints(type = "TEXT")
+        private String code;
+
+        @Constraints(type = "INTEGER")
+        private int rank;
+
+        public void setCode(String code) {
+            throw new ClassCastException("thrown by the setter itself");
+        }
+    }
+
+    @Test
+    void privateFieldsAreReadAndWritten() {
+
+        var accessors = Reflection.Accessors.of(Client.class);
+        Client client = new Client("Ada", "Lovelace");
+
+        assertEquals("Ada", accessors.get(client, "name"));
+        accessors.set(client, "name", "Grace");
+        assertEquals("Grace", client.getName());
+
+        accessors.callSetter(client, "surname", "Hopper");
+        assertEquals("Hopper", client.getSurname());
+    }
+
+    @Test
+    void primitiveFieldsAreBoxed() {
+        var accessors = Reflection.Accessors.of(Strict.class);
+        Strict strict = new Strict();
+        accessors.set(strict, "rank", 3);
+        assertEquals(3, accessors.get(strict, "rank"));
+    }
+
+    @Test
+    void aValueOfTheWrongTypeIsABadArgument() {
+
+        var accessors = Reflection.Accessors.of(Strict.class);
+        Strict strict = new Strict();
+
+        var e = assertThrows(IllegalArgumentException.class, () -> accessors.set(strict, "code", 42));
+        assertTrue(e.getMessage().contains("code"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> accessors.set(strict, "rank", null));
+        assertThrows(IllegalArgumentException.class, () -> accessors.callSetter(strict, "code", 42));
+        assertThrows(IllegalArgumentException.class, () -> new Client().reflect.fields.set("name", 42));
+    }
+
+    @Test
+    void exceptionsOfTheModelsOwnCodeGoThrough() {
+        var accessors = Reflection.Accessors.of(Strict.class);
+        var e = assertThrows(ClassCastException.class, () -> accessors.callSetter(new Strict(), "code", "A1"));
+        assertEquals("thrown by the setter itself", e.getMessage());
+    }
+}
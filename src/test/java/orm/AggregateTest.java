@@ -0,0 +1,89 @@
+package orm;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Payment;
+import models.Reservation;
+import orm.Table.Aggregate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AggregateTest {
+
+    private Reservation first, second;
+
+    @BeforeEach
+    void reset() {
+
+        TestDatabase.reset();
+        new Client("Ada", "Lovelace").add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        for (String start : new String[] {"2024-01-01", "2024-02-01"}) {
+            Reservation reservation = new Reservation();
+            reservation.setClient(client);
+            reservation.setStartDate(start);
+            reservation.add();
+        }
+
+        var reservations = Table.search("Reservation");
+        first = (Reservation) reservations.get(0);
+        second = (Reservation) reservations.get(1);
+        pay(first, 10.0, 1);
+        pay(first, 15.5, 2);
+        pay(second, 4.0, null);
+    }
+
+    private static void pay(Reservation reservation, Double amount, Integer installments) {
+        Payment payment = new Payment();
+        payment.setReservation(reservation);
+        payment.setAmount(amount);
+        payment.setInstallments(installments);
+        payment.add();
+    }
+
+    @Test
+    void countsAreLongs() {
+        assertEquals(3L, Table.aggregate("Payment", Aggregate.count()));
+        assertEquals(3L, Table.aggregate("Payment", Aggregate.count("reservation")));
+        assertEquals(2L, Table.aggregate("Payment", Aggregate.count("installments")));
+    }
+
+    @Test
+    void sumsFollowTheAttributeType() {
+        assertEquals(29.5, Table.aggregate("Payment", Aggregate.sum("amount")));
+        assertEquals(3L, Table.aggregate("Payment", Aggregate.sum("installments")));
+        assertEquals(29.5 / 3, Table.aggregate("Payment", Aggregate.avg("amount")), 1e-9);
+    }
+
+    @Test
+    void minAndMaxAreTyped() {
+
+        Double least = Table.aggregate("Payment", Aggregate.min("amount", Double.class));
+        LocalDate latest = Table.aggregate("Reservation", Aggregate.max("startDate", LocalDate.class));
+        assertEquals(4.0, least);
+        assertEquals(LocalDate.of(2024, 2, 1), latest);
+        assertEquals(15.5, Table.aggregate("Payment", Aggregate.max("amount", Number.class)));
+
+        assertThrows(IllegalArgumentException.class, () -> Table.aggregate("Payment", Aggregate.min("amount", Integer.class)));
+        assertThrows(IllegalArgumentException.class, () -> Table.aggregate("Payment", Aggregate.max("reservation", Reservation.class)));
+    }
+
+    @Test
+    void groupsAreKeyedByRefs() {
+
+        var sums = Table.aggregateGroups("Payment", Aggregate.sum("amount").groupBy("reservation"));
+        assertEquals(2, sums.size());
+        for (var group : sums.entrySet()) {
+            Ref<?> reservation = assertInstanceOf(Ref.class, group.getKey().get(0));
+            assertEquals(reservation.getId().equals(first.getId()) ? 25.5 : 4.0, group.getValue());
+        }
+        assertEquals(List.of(first.getId(), second.getId()), sums.keySet().stream().map(key -> ((Ref<?>) key.get(0)).getId()).sorted().toList());
+    }
+}
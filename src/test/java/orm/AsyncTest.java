@@ -0,0 +1,89 @@
+package orm;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncTest {
+
+    @AfterEach
+    void restore() {
+        Async.configure(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Test
+    void aRejectedWriteFailsItsFutureAndFreesTheLane() throws Exception {
+
+        Async.configure(Executors.newVirtualThreadPerTaskExecutor(), task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        CompletableFuture<Integer> rejected = Async.write(() -> 1);
+        var e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+
+        Async.configure(Executors.newVirtualThreadPerTaskExecutor());
+        assertEquals(2, Async.write(() -> 2).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aNewLaneWaitsForTheOldOne() throws Exception {
+
+        Async.configure(Executors.newVirtualThreadPerTaskExecutor());
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        var first = Async.write(() -> run(order, 1, running, overlaps, release));
+        var second = Async.write(() -> run(order, 2, running, overlaps, null));
+
+        Async.configure(Executors.newVirtualThreadPerTaskExecutor());
+        var third = Async.write(() -> run(order, 3, running, overlaps, null));
+
+        // only the first one runs until it's released
+        while (order.isEmpty()) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        assertEquals(List.of(1), order);
+        release.countDown();
+
+        CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1, 2, 3), order);
+        assertEquals(0, overlaps.get());
+    }
+
+    private static int run(List<Integer> order, int i, AtomicInteger running, AtomicInteger overlaps, CountDownLatch wait) {
+
+        if (running.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+        }
+        order.add(i);
+        try {
+            if (wait != null) {
+                assertTrue(wait.await(5, TimeUnit.SECONDS));
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            running.decrementAndGet();
+        }
+        return i;
+    }
+}
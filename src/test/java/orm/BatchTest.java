@@ -0,0 +1,95 @@
+package orm;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+import models.User;
+import models.Vehicle;
+import orm.util.BugDetectedException;
+import orm.util.Database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void rowsOfSeveralModelsAreAddedTogether() {
+
+        User user = new User();
+        user.setNote("batched");
+        int added = Table.addAll(List.of(new Client("Ada", "Lovelace"), user, new Client("Grace", "Hopper")));
+
+        assertEquals(3, added);
+        assertEquals(2, Table.search("Client").size());
+        assertEquals(1, Table.search("User").size());
+    }
+
+    @Test
+    void invalidRowsAreSkipped() {
+        // the name is NOT NULL
+        assertEquals(1, Table.addAll(List.of(new Client("Ada", "Lovelace"), new Client(null, "Nobody"))));
+        assertEquals(1, Table.search("Client").size());
+    }
+
+    @Test
+    void aFailingRowUndoesTheWholeBatch() {
+
+        User first = new User(), second = new User();
+        first.setNote("same");
+        second.setNote("same");
+
+        assertThrows(BugDetectedException.class, () -> Table.addAll(List.of(new Client("Ada", "Lovelace"), first, second)));
+        assertEquals(0, Table.search("Client").size());
+        assertEquals(0, Table.search("User").size());
+    }
+
+    @Test
+    void rowsAreEditedAndDeletedTogether() {
+
+        Table.addAll(List.of(new Client("Ada", "Lovelace"), new Client("Grace", "Hopper"), new Client("Alan", "Turing")));
+        var clients = Table.search("Client");
+        for (Table client : clients) {
+            ((Client) client).setKind("regular");
+        }
+
+        assertEquals(3, Table.editAll(clients));
+        assertEquals(3, Table.search("Client", "kind", "regular").size());
+
+        assertEquals(2, Table.deleteAll(clients.subList(0, 2)));
+        assertEquals(List.of("Turing"), Table.search("Client").stream().map(client -> ((Client) client).getSurname()).toList());
+    }
+
+    @Test
+    void rowsDeletedByACascadeCountAsDeleted() {
+
+        new Client("Ada", "Lovelace").add();
+        new Vehicle("Renault", "diesel", 2.5).add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        Reservation reservation = new Reservation();
+        reservation.setClient(client);
+        reservation.setVehicle((Vehicle) Table.search("Vehicle").elementAt(0));
+        reservation.add();
+
+        // the client's cascade deletes the reservation before its own statement runs
+        var tuples = new Vector<Table>(List.of(client, Table.search("Reservation").elementAt(0)));
+        assertTrue(Database.delete(tuples));
+        assertEquals(0, Table.search("Reservation").size());
+
+        // gone before the call, they aren't counted
+        assertEquals(0, Table.deleteAll(tuples));
+        assertFalse(Database.delete(tuples));
+    }
+}
@@ -0,0 +1,132 @@
+package orm;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import orm.ConnectionPool.PooledConnection;
+import orm.ConnectionPool.PooledConnection.CachedStatement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// a pool of its own, over a database of its own
+class ConnectionPoolTest {
+
+    @TempDir
+    Path directory;
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void open() {
+        pool = new ConnectionPool("jdbc:sqlite:" + directory.resolve("pool.db"), 2, 4);
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void aThreadGetsBackTheConnectionItHolds() {
+
+        try (PooledConnection outer = pool.acquire()) {
+            try (PooledConnection inner = pool.acquire()) {
+                assertSame(outer, inner);
+            }
+            assertTrue(pool.isHeld());
+        }
+
+        var stats = pool.stats();
+        assertEquals(1, stats.acquired());
+        assertEquals(1, stats.reused());
+        assertEquals(0, stats.leased());
+    }
+
+    @Test
+    void connectionsAreReused() {
+
+        PooledConnection first;
+        try (PooledConnection conn = pool.acquire()) {
+            first = conn;
+        }
+        try (PooledConnection conn = pool.acquire()) {
+            assertSame(first, conn);
+        }
+
+        assertEquals(1, pool.stats().created());
+        assertEquals(1, pool.stats().idle());
+    }
+
+    @Test
+    void threadsGetConnectionsOfTheirOwn() throws Exception {
+
+        try (PooledConnection mine = pool.acquire()) {
+            PooledConnection theirs = CompletableFuture.supplyAsync(() -> {
+                try (PooledConnection conn = pool.acquire()) {
+                    return conn;
+                }
+            }).get();
+            assertNotSame(mine, theirs);
+        }
+
+        assertEquals(2, pool.stats().created());
+        assertEquals(2, pool.stats().idle());
+    }
+
+    @Test
+    void aClosedPoolGivesNothing() {
+        pool.close();
+        assertThrows(IllegalStateException.class, pool::acquire);
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool("jdbc:sqlite::memory:", 0, 4));
+    }
+
+    @Test
+    void statementsAreCachedByTemplate() throws Exception {
+
+        try (PooledConnection conn = pool.acquire()) {
+
+            PreparedStatement first;
+            try (CachedStatement stmt = conn.prepare("SELECT 1;")) {
+                first = stmt.get();
+            }
+            try (CachedStatement stmt = conn.prepare("SELECT 1;")) {
+                assertSame(first, stmt.get());
+
+                // checked out, a nested use of the template gets a statement of its own
+                try (CachedStatement nested = conn.prepare("SELECT 1;")) {
+                    assertNotSame(stmt.get(), nested.get());
+                }
+            }
+        }
+
+        assertEquals(1, pool.stats().statementHits());
+        assertEquals(2, pool.stats().statementMisses());
+    }
+
+    @Test
+    void theLeastRecentlyUsedStatementsAreEvicted() throws Exception {
+
+        try (PooledConnection conn = pool.acquire()) {
+            for (int i = 0; i < 6; i++) {
+                conn.prepare("SELECT " + i + ";").close();
+            }
+            conn.prepare("SELECT 5;").close();
+            conn.prepare("SELECT 0;").close();
+        }
+
+        var stats = pool.stats();
+        assertEquals(1, stats.statementHits());
+        assertEquals(7, stats.statementMisses());
+        assertEquals(3, stats.statementEvictions());
+    }
+}
@@ -0,0 +1,91 @@
+package orm;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Payment;
+import models.Reservation;
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ForeignKeyTest {
+
+    private static final int CLIENTS = 6;
+
+    @BeforeEach
+    void reset() {
+
+        TestDatabase.reset();
+        new Vehicle("Renault", "diesel", 2.5).add();
+        Vehicle vehicle = (Vehicle) Table.search("Vehicle").elementAt(0);
+
+        for (int i = 0; i < CLIENTS; i++) {
+            new Client("Client " + i, null).add();
+        }
+        for (Table client : Table.search("Client")) {
+            Reservation reservation = new Reservation();
+            reservation.setClient((Client) client);
+            reservation.setVehicle(client.getId() % 2 == 0 ? vehicle : null);
+            reservation.setStartDate("2024-01-01");
+            reservation.add();
+        }
+        for (Table reservation : Table.search("Reservation")) {
+            Payment payment = new Payment();
+            payment.setReservation((Reservation) reservation);
+            payment.setAmount(1.0);
+            payment.add();
+        }
+    }
+
+    @Test
+    void batchesLoadWhatPerRowLoads() {
+        assertEquals(describe(search(Fetch.PER_ROW)), describe(search(Fetch.BATCH)));
+    }
+
+    // one search for the payments, then one per level of aggregation: reservations, then clients and vehicles
+    @Test
+    void batchesSearchOncePerReferencedModel() {
+
+        long perRow = statementsUsedBy(Fetch.PER_ROW), batch = statementsUsedBy(Fetch.BATCH);
+        assertTrue(perRow > 2 * CLIENTS, "per row: " + perRow);
+        assertTrue(batch <= 4, "batch: " + batch);
+    }
+
+    @Test
+    void aMissingForeignKeyStaysNull() {
+        for (Table reservation : Table.search(new Reservation(), Fetch.BATCH)) {
+            Reservation r = (Reservation) reservation;
+            if (r.getClient().getId() % 2 != 0) {
+                assertNull(r.getVehicle());
+            } else {
+                assertEquals("Renault", r.getVehicle().getBrand());
+            }
+        }
+    }
+
+    private static Vector<Table> search(Fetch fetch) {
+        return Table.search(new Payment(), fetch);
+    }
+
+    private static long statementsUsedBy(Fetch fetch) {
+        var before = Table.getPoolStats();
+        assertEquals(CLIENTS, search(fetch).size());
+        var after = Table.getPoolStats();
+        return after.statementHits() + after.statementMisses() - before.statementHits() - before.statementMisses();
+    }
+
+    private static List<String> describe(Vector<Table> payments) {
+        return payments.stream().map(payment -> {
+            Reservation reservation = ((Payment) payment).getReservation();
+            Vehicle vehicle = reservation.getVehicle();
+            return payment.getId() + " " + reservation.getId() + " " + reservation.getClient().getName() + " " + (vehicle == null ? null : vehicle.getBrand());
+        }).toList();
+    }
+}
@@ -0,0 +1,61 @@
+package orm;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import orm.SQLiteQueryConstructor.DataDefinition;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the FTS5 table reads its text from the clients table, the triggers must keep its index in step
+class FullTextIndexTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+        new Client("Ada", "Lovelace").add();
+        new Client("Grace", "Hopper").add();
+        new Client("Grace", "Kelly").add();
+    }
+
+    @Test
+    void wordsAreMatchedAsPrefixes() {
+
+        assertTrue(DataDefinition.of(Client.class).fullTextIndexReady());
+        assertEquals(List.of("Hopper", "Kelly"), surnames("grac"));
+        assertEquals(List.of("Hopper"), surnames("grace hop"));
+        assertEquals(List.of(), surnames("lace"));
+    }
+
+    @Test
+    void editsAreIndexed() {
+
+        Client grace = (Client) Table.search("Client", "surname", "Hopper").elementAt(0);
+        grace.setName("Amazing");
+        grace.setSurname("Jones");
+        grace.edit();
+
+        assertEquals(List.of("Kelly"), surnames("grace"));
+        assertEquals(List.of(), surnames("hopper"));
+        assertEquals(List.of("Jones"), surnames("amaz jon"));
+    }
+
+    @Test
+    void deletesAreIndexed() {
+
+        Table.search("Client", "surname", "Kelly").elementAt(0).delete();
+        assertEquals(List.of("Hopper"), surnames("grace"));
+
+        Table.search("Client", "surname", "Hopper").elementAt(0).delete();
+        assertEquals(List.of(), surnames("grace"));
+        assertEquals(List.of("Lovelace"), surnames("ada"));
+    }
+
+    private static List<String> surnames(String text) {
+        return Table.searchText("Client", text, 10).stream().map(client -> ((Client) client).getSurname()).sorted().toList();
+    }
+}
@@ -0,0 +1,135 @@
+package orm;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Payment;
+import models.Reservation;
+import models.Return;
+import models.User;
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The test models are compiled with MapperProcessor (see the pom), their mappers must be the ones used
+class GeneratedMapperTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void everyModelGetsItsGeneratedMapper() {
+        for (var model : new Class<?>[] {Client.class, Vehicle.class, Reservation.class, Return.class, Payment.class, User.class}) {
+            var fields = Reflection.fieldsOf(model.asSubclass(Table.class));
+            assertNotNull(fields.mapper, model.getSimpleName());
+            assertEquals(model.getName() + "_Mapper", fields.mapper.getClass().getName());
+        }
+    }
+
+    @Test
+    void nonPrivateFieldsAreAccessedDirectly() {
+
+        var fields = Reflection.fieldsOf(Vehicle.class);
+        assertFalse(fields.direct[0]);
+        for (int i=1;i<fields.count;i++) {
+            assertTrue(fields.direct[i], fields.names[i]);
+        }
+
+        Vehicle vehicle = new Vehicle("Renault", "diesel", 2.5);
+        assertEquals("Renault", fields.get(vehicle, fields.indexOf("brand")));
+        fields.set(vehicle, fields.indexOf("price"), 3.0);
+        assertEquals(3.0, vehicle.getPrice());
+    }
+
+    @Test
+    void privateFieldsGoThroughTheirGetterAndSetter() {
+
+        var fields = Reflection.fieldsOf(Client.class);
+        for (int i=1;i<fields.count;i++) {
+            assertTrue(fields.direct[i], fields.names[i]);
+        }
+
+        Client client = new Client("Ada", "Lovelace");
+        fields.set(client, fields.indexOf("surname"), "Byron");
+        assertEquals("Byron", client.getSurname());
+        assertEquals("Ada", fields.get(client, fields.indexOf("name")));
+
+        // setStartDate() takes a String, only the row binding can use it
+        var reservations = Reflection.fieldsOf(Reservation.class);
+        assertFalse(reservations.direct[reservations.indexOf("startDate")]);
+        assertTrue(reservations.mapper.isBound(reservations.indexOf("startDate")));
+    }
+
+    @Test
+    void rowsAreBoundByTheGeneratedCode() throws Exception {
+
+        new Client("Ada", "Lovelace").add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        Reservation reservation = new Reservation();
+        reservation.setClient(client);
+        reservation.setStartDate("2024-05-01");
+        reservation.add();
+
+        Reservation read = (Reservation) Table.search("Reservation").elementAt(0);
+        assertEquals(LocalDate.of(2024, 5, 1), read.getStartDate());
+        assertEquals("Lovelace", read.getClient().getSurname());
+
+        // only the id and the foreign keys are left to the RowMapper's own columns
+        var fields = Reflection.fieldsOf(Reservation.class);
+        try (var conn = Table.getConnectionPool().acquire();
+             var rs = conn.createStatement().executeQuery("SELECT * FROM reservations")) {
+            var mapper = DataMapper.RowMapper.of(Reservation.class, "*", rs);
+            assertNotNull(mapper.generated);
+            assertEquals(3, mapper.columns.length);
+            for (var column : mapper.columns) {
+                assertTrue(column.referenced() != null || column.index() == rs.findColumn("id"));
+            }
+        }
+        assertFalse(fields.mapper.isBound(fields.indexOf("client")));
+    }
+
+    @Test
+    void theMapperTypesMatchTheFields() {
+        var fields = Reflection.fieldsOf(Reservation.class);
+        assertArrayEquals(fields.types, fields.mapper.fieldTypes());
+        assertEquals(LocalDate.class, fields.mapper.fieldTypes()[fields.indexOf("startDate")]);
+    }
+
+    @Test
+    void aMapperIsOutdatedOnceANameATypeOrAConstraintChanged() {
+
+        var fields = Reflection.fieldsOf(Payment.class);
+        assertTrue(Reflection.isUpToDate(fields.mapper, fields.names, fields.types, fields.constraints));
+
+        String[] names = fields.names.clone();
+        names[fields.indexOf("amount")] = "total";
+        assertFalse(Reflection.isUpToDate(fields.mapper, names, fields.types, fields.constraints));
+
+        Class<?>[] types = fields.types.clone();
+        types[fields.indexOf("amount")] = Integer.class;
+        assertFalse(Reflection.isUpToDate(fields.mapper, fields.names, types, fields.constraints));
+
+        // e.g. a field turned NOT NULL, the generated CREATE TABLE is wrong
+        Constraints[] constraints = fields.constraints.clone();
+        constraints[fields.indexOf("amount")] = fields.constraints[fields.indexOf("reservation")];
+        assertFalse(Reflection.isUpToDate(fields.mapper, fields.names, fields.types, constraints));
+    }
+
+    @Test
+    void rowsAreReadAndWrittenThroughTheMapper() {
+
+        new Vehicle("Peugeot", "petrol", 10.0).add();
+        Vehicle read = (Vehicle) Table.search("Vehicle").elementAt(0);
+        assertEquals("Peugeot", read.getBrand());
+        assertEquals(10.0, read.getPrice());
+    }
+}
@@ -0,0 +1,67 @@
+package orm;
+
+import java.util.Vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class IdentityMapTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+
+        new Client("Ada", "Lovelace").add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        for (String start : new String[] {"2024-01-01", "2024-02-01"}) {
+            Reservation reservation = new Reservation();
+            reservation.setClient(client);
+            reservation.setStartDate(start);
+            reservation.add();
+        }
+    }
+
+    @Test
+    void aRowReferencedTwiceInOneSearchIsOneInstance() {
+
+        Vector<Table> reservations = Table.search("Reservation");
+        assertEquals(2, reservations.size());
+
+        Client first = ((Reservation) reservations.get(0)).getClient();
+        assertEquals("Ada", first.getName());
+        assertSame(first, ((Reservation) reservations.get(1)).getClient());
+    }
+
+    @Test
+    void aSessionSpansSeveralSearches() {
+
+        try (var _ = IdentityMap.open()) {
+            Table client = Table.search("Client").elementAt(0);
+            assertSame(client, Table.search("Client").elementAt(0));
+            assertSame(client, ((Reservation) Table.search("Reservation").elementAt(0)).getClient());
+        }
+
+        assertNotSame(Table.search("Client").elementAt(0), Table.search("Client").elementAt(0));
+    }
+
+    @Test
+    void sessionsAreClosedWithTheirOutermostScope() {
+
+        try (var outer = IdentityMap.open()) {
+            try (var inner = IdentityMap.open()) {
+                assertSame(outer, inner);
+            }
+            assertSame(outer, IdentityMap.current());
+        }
+
+        assertNull(IdentityMap.current());
+    }
+}
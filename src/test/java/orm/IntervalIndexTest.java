@@ -0,0 +1,89 @@
+package orm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+import orm.SQLiteQueryConstructor.DataDefinition;
+import orm.Table.Range;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the R*Tree only narrows the rows down, the results must be those of the plain overlap condition
+class IntervalIndexTest {
+
+    private static final String[][] INTERVALS = {
+        {"2024-01-01", "2024-01-05"}, {"2024-01-10", "2024-01-20"}, {"2024-01-20", "2024-01-20"},
+        {"2024-02-01", null}, {null, "2024-01-15"}, {"2024-03-01", "2024-02-20"}, {"2023-12-01", "2024-06-01"}
+    };
+
+    private static final String[][] QUERIES = {
+        {"2024-01-03", "2024-01-04"}, {"2024-01-05", "2024-01-10"}, {"2024-01-20", "2024-01-20"},
+        {"2024-02-01", "2024-02-01"}, {"2024-01-15", "2024-01-15"}, {"2024-02-25", "2024-02-10"},
+        {"2025-01-01", "2025-12-31"}, {"2023-01-01", "2023-01-31"}
+    };
+
+    private String index;
+
+    @BeforeEach
+    void reset() {
+
+        TestDatabase.reset();
+        index = DataDefinition.intervalIndexName(DataDefinition.of(Reservation.class).tableName, "startDate");
+
+        new Client("Ada", "Lovelace").add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        for (String[] interval : INTERVALS) {
+            Reservation reservation = new Reservation();
+            reservation.setClient(client);
+            reservation.setStartDate(interval[0]);
+            reservation.setEndDate(interval[1]);
+            reservation.add();
+        }
+
+        // the triggers follow edits and deletes
+        Reservation moved = (Reservation) Table.search("Reservation").elementAt(0);
+        moved.setStartDate("2024-04-01");
+        moved.setEndDate("2024-04-10");
+        moved.edit();
+        Table.search("Reservation").elementAt(1).delete();
+    }
+
+    @Test
+    void theIndexFindsWhatTheOverlapConditionFinds() {
+
+        assertTrue(DataDefinition.of(Reservation.class).intervalIndexesReady());
+        List<TreeSet<Integer>> indexed = searchAll();
+
+        TestDatabase.execute(
+            "DROP TRIGGER " + index + "_insert;", "DROP TRIGGER " + index + "_update;",
+            "DROP TRIGGER " + index + "_delete;", "DROP TABLE " + index + ";"
+        );
+        Schema.invalidate();
+        assertFalse(DataDefinition.of(Reservation.class).intervalIndexesReady());
+
+        assertEquals(searchAll(), indexed);
+        assertTrue(indexed.stream().anyMatch(ids -> !ids.isEmpty()));
+    }
+
+    private static List<TreeSet<Integer>> searchAll() {
+
+        List<TreeSet<Integer>> found = new ArrayList<>();
+        for (String[] query : QUERIES) {
+            var ranges = new Vector<>(List.of(new Range("startDate", query[0], query[1])));
+            TreeSet<Integer> ids = new TreeSet<>();
+            for (Table reservation : Table.search(new Vector<>(List.of(new Reservation())), ranges)) {
+                ids.add(reservation.getId());
+            }
+            found.add(ids);
+        } return found;
+    }
+}
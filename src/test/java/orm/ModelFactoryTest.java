@@ -0,0 +1,57 @@
+package orm;
+
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Vehicle;
+import orm.util.BugDetectedException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelFactoryTest {
+
+    // no generated mapper, a private constructor: the factory is spun around it
+    static class Hidden extends Table {
+
+        @Constraints(type = "TEXT")
+        String label = "default";
+
+        private Hidden() {}
+    }
+
+    @Test
+    void everyCallGivesAFreshInstance() {
+
+        Table first = Reflection.getModelInstance("Client"), second = Reflection.getModelInstance("Client");
+        assertInstanceOf(Client.class, first);
+        assertNotSame(first, second);
+        assertNull(first.getId());
+        assertSame(Reflection.getModel("Client"), Reflection.getModel("Client"));
+    }
+
+    @Test
+    void modelsWithoutAGeneratedMapperHaveFactoriesToo() {
+        assertNull(Reflection.fieldsOf(Hidden.class).mapper);
+        Hidden hidden = (Hidden) Reflection.getModelInstance(Hidden.class);
+        assertEquals("default", hidden.label);
+        assertNotSame(hidden, Reflection.getModelInstance(Hidden.class));
+    }
+
+    @Test
+    void constructorsAreChosenByTheArgumentTypes() {
+
+        Client client = (Client) Reflection.getModelInstance("Client", new Object[] {"Ada", "Lovelace"});
+        assertEquals("Lovelace", client.getSurname());
+
+        Vehicle vehicle = (Vehicle) Reflection.getModelInstance("Vehicle", new Object[] {"Renault", "diesel", 2.5});
+        assertEquals(2.5, vehicle.getPrice());
+
+        assertThrows(BugDetectedException.class, () -> Reflection.getModelInstance("Client", new Object[] {42}));
+        assertThrows(BugDetectedException.class, () -> Reflection.getModelInstance("NoSuchModel"));
+    }
+}
@@ -0,0 +1,55 @@
+package orm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ModelMetadataTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void instancesShareTheirModelsQueryConstructor() {
+        assertSame(query(new Client()), query(new Client("a", "b")));
+        assertSame(SQLiteQueryConstructor.of(Client.class), query(new Client()));
+        assertNotSame(query(new Client()), query(new Vehicle()));
+        assertSame(Reflection.fieldsOf(Client.class), query(new Client()).fields);
+    }
+
+    @Test
+    void statementsTakeTheirValuesFromTheTupleGiven() {
+
+        Client first = new Client("first", "one"), second = new Client("second", "two");
+        var manipulate = query(first).manipulate;
+
+        assertEquals("first", manipulate.insertValues(first).get(0));
+        assertEquals("second", manipulate.insertValues(second).get(0));
+        assertEquals(manipulate.insert(first).template(), manipulate.insert(second).template());
+    }
+
+    @Test
+    void aReflectionIsAViewOverTheSharedMetadata() {
+
+        Client client = new Client("name", "surname");
+        assertSame(Reflection.fieldsOf(Client.class).names, client.reflect.fields.names);
+        assertSame(Reflection.fieldsOf(Client.class).constraints, new Client().reflect.fields.constraints);
+        assertEquals("name", client.reflect.fields.get("name"));
+
+        client.add();
+        Client read = (Client) Table.search("Client").elementAt(0);
+        assertEquals("surname", read.reflect.fields.get("surname"));
+    }
+
+    private static SQLiteQueryConstructor query(Table tuple) {
+        return tuple.query;
+    }
+}
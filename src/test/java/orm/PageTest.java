@@ -0,0 +1,68 @@
+package orm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import orm.Table.Page;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PageTest {
+
+    private static final List<String> NAMES = List.of("Grace", "Ada", "Alan", "Edsger", "Barbara", "Ada", "Donald");
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+        for (String name : NAMES) {
+            new Client(name, null).add();
+        }
+    }
+
+    @Test
+    void pagesByIdCoverEveryRowOnce() {
+
+        List<Integer> ids = new ArrayList<>();
+        for (Page page = Page.first(3); page != null; ) {
+            var rows = Table.search(new Client(), page);
+            rows.forEach(row -> ids.add(row.getId()));
+            page = page.next(rows);
+        }
+
+        assertEquals(NAMES.size(), ids.size());
+        assertEquals(ids.stream().sorted().toList(), ids);
+    }
+
+    // equal names are ordered by id, none of them skipped at a page boundary
+    @Test
+    void pagesSeekPastTheLastKey() {
+
+        List<String> names = new ArrayList<>();
+        for (Page page = Page.first(2).orderBy("name").descending(); page != null; ) {
+            var rows = Table.search(new Client(), page);
+            rows.forEach(row -> names.add(((Client) row).getName()));
+            page = page.next(rows);
+        }
+
+        assertEquals(NAMES.stream().sorted((a, b) -> b.compareTo(a)).toList(), names);
+    }
+
+    @Test
+    void anIncompletePageIsTheLast() {
+        var rows = Table.search(new Client(), Page.first(NAMES.size() + 1));
+        assertEquals(NAMES.size(), rows.size());
+        assertNull(Page.first(NAMES.size() + 1).next(rows));
+    }
+
+    @Test
+    void nullableAttributesCantOrderPages() {
+        assertThrows(IllegalArgumentException.class, () -> Table.search(new Client(), Page.first(2).orderBy("surname")));
+        assertThrows(IllegalArgumentException.class, () -> Table.search(new Client(), Page.first(0)));
+    }
+}
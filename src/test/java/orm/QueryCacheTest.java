@@ -0,0 +1,152 @@
+package orm;
+
+import java.time.Duration;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+import models.Review;
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCacheTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+        QueryCache.enable(Client.class, 10, Duration.ofMinutes(1));
+        QueryCache.enable(Reservation.class, 10, Duration.ofMinutes(1));
+
+        new Client("Ada", "Lovelace").add();
+        Reservation reservation = new Reservation();
+        reservation.setClient((Client) Table.search("Client").elementAt(0));
+        reservation.setStartDate("2024-01-01");
+        reservation.add();
+    }
+
+    @AfterEach
+    void disable() {
+        QueryCache.disable(Client.class);
+        QueryCache.disable(Reservation.class);
+    }
+
+    @Test
+    void hitsAreCopiesTheCallerMayChange() {
+
+        long hits = QueryCache.stats(Client.class).hits();
+        Client first = (Client) Table.search("Client").elementAt(0);
+        first.setName("changed after the first search");
+
+        Client hit = (Client) Table.search("Client").elementAt(0);
+        assertEquals("Ada", hit.getName());
+        hit.setName("changed after the hit");
+
+        assertEquals("Ada", ((Client) Table.search("Client").elementAt(0)).getName());
+        assertEquals(hits + 3, QueryCache.stats(Client.class).hits());
+    }
+
+    @Test
+    void aggregatedTuplesAreCopiedOncePerHit() {
+
+        Table.search("Reservation");
+        var reservations = Table.search("Reservation");
+        Reservation hit = (Reservation) reservations.elementAt(0);
+        assertTrue(QueryCache.stats(Reservation.class).hits() > 0);
+        assertEquals("Ada", hit.getClient().getName());
+
+        hit.getClient().setName("changed");
+        assertNotSame(hit.getClient(), ((Reservation) Table.search("Reservation").elementAt(0)).getClient());
+        assertEquals("Ada", ((Reservation) Table.search("Reservation").elementAt(0)).getClient().getName());
+    }
+
+    @Test
+    void hitsGiveTheInstancesOfTheOpenIdentityMap() {
+
+        Table.search("Client");
+        try (var _ = IdentityMap.open()) {
+            Client client = (Client) Table.search("Client").elementAt(0);
+            assertSame(client, Table.search("Client").elementAt(0));
+            assertSame(client, ((Reservation) Table.search("Reservation").elementAt(0)).getClient());
+        }
+        assertTrue(QueryCache.stats(Client.class).hits() >= 2);
+    }
+
+    @Test
+    void dependentsIncludeModelsRegisteredLater() {
+
+        assertFalse(QueryCache.dependentsOf(Vehicle.class).stream().anyMatch(model -> model.getSimpleName().equals("Review")));
+        new Review();
+        assertTrue(QueryCache.dependentsOf(Vehicle.class).contains(Review.class));
+    }
+
+    @Test
+    void attributeValuesAreCachedUntilAWrite() {
+
+        Client client = new Client("Grace", "Hopper");
+        client.setKind("regular");
+        client.add();
+        assertEquals(Set.of("regular"), kinds());
+
+        // unseen until the model is written to through the ORM
+        insertClientOfKind("vip");
+        assertEquals(Set.of("regular"), kinds());
+
+        client = new Client("Alan", "Turing");
+        client.setKind("new");
+        client.add();
+        assertEquals(Set.of("regular", "vip", "new"), kinds());
+    }
+
+    @Test
+    void attributeValuesAreCachedWithoutARegion() {
+
+        QueryCache.disable(Client.class);
+        insertClientOfKind("vip");
+        assertEquals(Set.of("vip"), kinds());
+        insertClientOfKind("regular");
+        assertEquals(Set.of("vip"), kinds());
+
+        // only a write to the model drops them
+        Reservation reservation = new Reservation();
+        reservation.setClient((Client) Table.search("Client").elementAt(0));
+        reservation.add();
+        assertEquals(Set.of("vip"), kinds());
+
+        new Client("Grace", "Hopper").add();
+        assertEquals(Set.of("vip", "regular"), kinds());
+    }
+
+    @Test
+    void attributeValuesAreNeitherReadNorStoredInATransaction() {
+
+        assertEquals(Set.of(), kinds());
+        assertThrows(IllegalStateException.class, () -> Table.inTransaction(() -> {
+            insertClientOfKind("vip");
+            assertEquals(Set.of("vip"), kinds());
+            throw new IllegalStateException("rolled back");
+        }));
+        assertEquals(Set.of(), kinds());
+    }
+
+    // Ada has none
+    private static Set<String> kinds() {
+        Set<String> kinds = new Client().getAttributeValues("kind");
+        kinds.remove(null);
+        return kinds;
+    }
+
+    private static void insertClientOfKind(String kind) {
+        String table = SQLiteQueryConstructor.DataDefinition.of(Client.class).tableName;
+        TestDatabase.execute("INSERT INTO " + table + " (name, kind) VALUES ('" + kind + "', '" + kind + "');");
+    }
+}
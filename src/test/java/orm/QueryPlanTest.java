@@ -0,0 +1,81 @@
+package orm;
+
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import orm.SQLiteQueryConstructor.PreparedQuery;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryPlanTest {
+
+    // the full-text index changes how many values a text criteria binds
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void aShapeIsRenderedOnce() {
+
+        PreparedQuery ada = select(new Client("Ada", "Lovelace"));
+        PreparedQuery grace = select(new Client("Grace", "Hopper"));
+
+        assertSame(ada.template(), grace.template());
+        // only the bound values tell them apart
+        assertEquals(2, ada.values().size());
+        assertNotEquals(ada.values(), grace.values());
+
+        PreparedQuery twoNames = select(new Client("Ada", null), new Client("Grace", null));
+        assertNotEquals(ada.template(), twoNames.template());
+    }
+
+    @Test
+    void concurrentSelectsShareTheirTemplate() throws Exception {
+
+        int threads = 8;
+        Set<String> templates = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> selects = new Vector<>();
+            for (int t = 0; t < threads; t++) {
+                String name = "name" + t;
+                selects.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        // a shape no other test renders
+                        templates.add(select(new Client(name, null), new Client(name, null), new Client(name, null)).template());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> select : selects) {
+                select.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, templates.size());
+        assertSame(templates.iterator().next(),
+                   select(new Client("x", null), new Client("y", null), new Client("z", null)).template());
+    }
+
+    private static PreparedQuery select(Table... criterias) {
+        return SQLiteQueryConstructor.of(Client.class).manipulate.select(new Vector<>(List.of(criterias)), null);
+    }
+}
@@ -0,0 +1,75 @@
+package orm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+import models.Return;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefTest {
+
+    private Reservation reservation;
+
+    @BeforeEach
+    void reset() {
+
+        TestDatabase.reset();
+        new Client("Ada", "Lovelace").add();
+        Reservation added = new Reservation();
+        added.setClient((Client) Table.search("Client").elementAt(0));
+        added.setStartDate("2024-01-01");
+        added.add();
+        reservation = (Reservation) Table.search("Reservation").elementAt(0);
+
+        Return returned = new Return();
+        returned.setReservation(Ref.to(reservation));
+        returned.setNote("on time");
+        returned.add();
+    }
+
+    @Test
+    void searchesOnlyReadTheId() {
+
+        long before = statements();
+        Return returned = (Return) Table.search("Return").elementAt(0);
+        assertEquals(1, statements() - before);
+
+        Ref<Reservation> ref = returned.getReservation();
+        assertFalse(ref.isLoaded());
+        assertEquals(reservation.getId(), ref.getId());
+        assertEquals(Ref.to(reservation), ref);
+    }
+
+    @Test
+    void theRowIsLoadedOnFirstGet() {
+
+        Ref<Reservation> ref = ((Return) Table.search("Return").elementAt(0)).getReservation();
+        Reservation loaded = ref.get();
+
+        assertTrue(ref.isLoaded());
+        assertEquals("Ada", loaded.getClient().getName());
+        assertSame(loaded, ref.get());
+    }
+
+    @Test
+    void aDanglingReferenceFailsWhenLoaded() {
+
+        Ref<Reservation> ref = ((Return) Table.search("Return").elementAt(0)).getReservation();
+        TestDatabase.execute("DELETE FROM reservations;");
+        QueryCache.invalidate(Reservation.class);
+
+        assertThrows(IllegalStateException.class, ref::get);
+    }
+
+    private static long statements() {
+        var stats = Table.getPoolStats();
+        return stats.statementHits() + stats.statementMisses();
+    }
+}
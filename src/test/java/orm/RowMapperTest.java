@@ -0,0 +1,87 @@
+package orm;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Payment;
+import models.Reservation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RowMapperTest {
+
+    static class Counter extends Table {
+
+        @Constraints(type = "INTEGER")
+        private int hits;
+
+        @Constraints(type = "REAL")
+        private double ratio;
+    }
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void nullColumnsGiveNullBoxes() {
+
+        Client client = new Client("Ada", "Lovelace");
+        client.add();
+        Reservation reservation = new Reservation();
+        reservation.setClient((Client) Table.search("Client").elementAt(0));
+        reservation.setStartDate("2024-03-01");
+        reservation.add();
+
+        Payment payment = new Payment();
+        payment.setReservation((Reservation) Table.search("Reservation").elementAt(0));
+        payment.add();
+        payment = new Payment();
+        payment.setReservation((Reservation) Table.search("Reservation").elementAt(0));
+        payment.setAmount(0.0);
+        payment.setInstallments(0);
+        payment.add();
+
+        var payments = Table.search("Payment");
+        Payment empty = (Payment) payments.get(0), zero = (Payment) payments.get(1);
+        assertNull(empty.getAmount());
+        assertNull(empty.getInstallments());
+        assertEquals(0.0, zero.getAmount());
+        assertEquals(0, zero.getInstallments());
+
+        Reservation read = (Reservation) Table.search("Reservation").elementAt(0);
+        assertEquals(LocalDate.of(2024, 3, 1), read.getStartDate());
+        assertNull(read.getEndDate());
+    }
+
+    @Test
+    void everyProjectionHasItsOwnLayout() {
+
+        new Client("Ada", "Lovelace").add();
+        new Client("Grace", "Hopper").add();
+
+        // 'SELECT *' then 'SELECT client.*' through a join, each mapped by name
+        Client listed = (Client) Table.search("Client", "name", "Grace").elementAt(0);
+        Client found = (Client) Table.searchText("Client", "grac", 10).elementAt(0);
+        assertEquals(listed.getName(), found.getName());
+        assertEquals("Hopper", found.getSurname());
+        assertEquals("Hopper", ((Client) Table.search("Client", "name", "Grace").elementAt(0)).getSurname());
+    }
+
+    @Test
+    void primitiveFieldsAreWrittenUnboxed() {
+
+        var fields = Reflection.fieldsOf(Counter.class);
+        Counter counter = new Counter();
+        fields.intWriterOf(fields.indexOf("hits")).write(counter, 7);
+        fields.doubleWriterOf(fields.indexOf("ratio")).write(counter, 0.5);
+
+        assertEquals(7, counter.hits);
+        assertEquals(0.5, counter.ratio);
+    }
+}
@@ -0,0 +1,128 @@
+package orm;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import orm.util.BugDetectedException;
+
+import models.Client;
+import models.User;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaTest {
+
+    @BeforeEach
+    void dropUsers() {
+        TestDatabase.reset();
+        TestDatabase.execute("DROP TABLE users;");
+        Schema.invalidate();
+    }
+
+    @Test
+    void readingDoesNotCreateTables() {
+
+        assertFalse(Table.isSearchable("User"));
+        assertThrows(IllegalStateException.class, () -> Table.search("User"));
+        assertThrows(IllegalStateException.class, () -> Table.search(new Vector<>(List.of(new User())), new Vector<>()));
+
+        Schema.invalidate();
+        assertFalse(Table.isSearchable("User"));
+        assertFalse(Schema.getTables().contains("users"));
+    }
+
+    @Test
+    void theFirstWriteCreatesItsTable() {
+
+        User user = new User();
+        user.setNote("first");
+        assertEquals(1, user.add());
+
+        assertTrue(Table.isSearchable("User"));
+        assertEquals(1, Table.search("User").size());
+    }
+
+    @Test
+    void createMakesEveryTable() {
+
+        Schema.create();
+        assertTrue(Table.isSearchable("User"));
+
+        Schema.invalidate();
+        assertTrue(Table.isSearchable("User"));
+        assertEquals(0, Table.search("User").size());
+    }
+
+    @Test
+    void aTableIsCreatedWhileAnotherThreadHoldsTheWriteLock() throws Exception {
+
+        CountDownLatch locked = new CountDownLatch(1);
+        var other = CompletableFuture.supplyAsync(() -> {
+            try {
+                locked.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            User user = new User();
+            user.setNote("other");
+            return user.add();
+        });
+
+        Table.inTransaction(() -> {
+            new Client("Ada", "Lovelace").add();
+            locked.countDown();
+            try {
+                // the other thread is waiting for the write lock to create the table
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            User user = new User();
+            user.setNote("mine");
+            user.add();
+        });
+
+        assertEquals(1, other.get());
+        assertEquals(2, Table.search("User").size());
+    }
+
+    @Test
+    void existingDuplicatesLeaveTheTableUsableWithoutItsUniqueIndex() {
+
+        TestDatabase.execute(SQLiteQueryConstructor.DataDefinition.of(User.class).table(), "INSERT INTO users (note) VALUES ('same'), ('same');");
+        Schema.invalidate();
+
+        try {
+            Schema.create();
+            assertFalse(Schema.getIndexes().contains("ux_users_note"));
+            assertEquals(2, Table.search("User").size());
+
+            User user = new User();
+            user.setNote("other");
+            assertEquals(1, user.add());
+        } finally {
+            TestDatabase.execute("DELETE FROM users;");
+            Schema.invalidate();
+        }
+
+        // created once the duplicates are gone
+        Schema.create();
+        assertTrue(Schema.getIndexes().contains("ux_users_note"));
+        User user = new User();
+        user.setNote("same");
+        user.add();
+        assertThrows(BugDetectedException.class, () -> {
+            User duplicate = new User();
+            duplicate.setNote("same");
+            duplicate.add();
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package orm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Client;
+import models.Reservation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+
+        new Client("Ada", "Lovelace").add();
+        Client client = (Client) Table.search("Client").elementAt(0);
+        for (int day = 1; day <= 5; day++) {
+            Reservation reservation = new Reservation();
+            reservation.setClient(client);
+            reservation.setStartDate("2024-01-0" + day);
+            reservation.add();
+        }
+    }
+
+    @Test
+    void chunksResolveTheirForeignKeys() {
+        try (var reservations = Table.stream(new Reservation())) {
+            assertEquals(5, reservations.map(r -> ((Reservation) r).getClient().getName()).filter("Ada"::equals).count());
+        }
+        assertEquals(0, Table.getPoolStats().leased());
+    }
+
+    @Test
+    void aStreamClosedOnAnotherThreadGivesItsConnectionBack() throws Exception {
+
+        var reservations = Table.stream(new Vector<>(List.of(new Reservation())), null, 2);
+        Iterator<Table> rows = reservations.iterator();
+        assertTrue(rows.hasNext());
+        rows.next();
+        assertEquals(1, Table.getPoolStats().leased());
+
+        CompletableFuture.runAsync(reservations::close).get();
+
+        assertEquals(0, Table.getPoolStats().leased());
+        // the chunk already read is still there
+        rows.next();
+        assertFalse(rows.hasNext());
+    }
+
+    @Test
+    void anAbandonedStreamGivesItsConnectionBack() throws Exception {
+
+        abandon();
+        for (int i = 0; i < 50 && Table.getPoolStats().leased() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, Table.getPoolStats().leased());
+    }
+
+    private static void abandon() {
+        var reservations = Table.stream(new Vector<>(List.of(new Reservation())), null, 2);
+        reservations.iterator().next();
+    }
+}
@@ -0,0 +1,102 @@
+package orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Drives CRUD from many virtual threads at once and checks that every thread reads back exactly
+// what it wrote. Each tuple is unique (its brand), so no other thread's rows can match it
+class StressTest {
+
+    private static final AtomicInteger unique = new AtomicInteger();
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void everyThreadReadsBackWhatItWrote() {
+        for (int threads : new int[] {1, 16, 64}) {
+            assertEquals(List.of(), run(threads, 10), threads + " threads");
+        }
+        assertEquals(0, Table.search("Vehicle").size());
+    }
+
+    @Test
+    void thePoolIsGivenBackOnceTheThreadsAreDone() {
+        run(32, 5);
+        var stats = Table.getConnectionPool().stats();
+        assertEquals(0, stats.leased(), stats.toString());
+    }
+
+    // each thread runs operationsPerThread add -> search -> edit -> delete -> search cycles,
+    // gives the errors met
+    private static List<String> run(int threads, int operationsPerThread) {
+
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t=0;t<threads;t++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i=0;i<operationsPerThread;i++) {
+                        try {
+                            String error = cycle(new Vehicle("stress-" + unique.incrementAndGet(), "diesel", 1.0));
+                            if (error != null) {
+                                errors.add(error);
+                            }
+                        } catch (RuntimeException e) {
+                            errors.add(e.toString());
+                        }
+                    } return null;
+                });
+            }
+            start.countDown();
+        }
+
+        return List.copyOf(errors);
+    }
+
+    // null if the tuple went through every step as expected
+    private static String cycle(Table tuple) {
+
+        if (tuple.add() != 1) {
+            return "Not added: " + tuple;
+        }
+
+        Vector<Table> found = Table.search(tuple);
+        if (found.size() != 1) {
+            return String.format("%s rows read back instead of 1 for: %s", found.size(), tuple);
+        }
+
+        Table stored = found.elementAt(0);
+        if (stored.edit() != 1) {
+            return "Not edited: " + stored;
+        }
+
+        if (stored.delete() != 1) {
+            return "Not deleted: " + stored;
+        }
+
+        found = Table.search(tuple);
+        if (found.size() != 0) {
+            return String.format("%s rows left after deleting: %s", found.size(), tuple);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package orm;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import orm.ConnectionPool.PooledConnection;
+import orm.SQLiteQueryConstructor.DataDefinition;
+
+// The tests share the database given by DB_PATH (see the pom), each of them starts from empty tables
+final class TestDatabase {
+
+    private TestDatabase() {}
+
+    static void reset() {
+
+        Schema.create();
+        execute(Table.getModels().stream().map(model -> "DELETE FROM " + DataDefinition.of(model).tableName + ";").toArray(String[]::new));
+        for (var model : Table.getModels()) {
+            QueryCache.invalidate(model);
+        }
+    }
+
+    static void execute(String... statements) {
+        try (PooledConnection conn = Table.getConnectionPool().acquire();
+             Statement stmt = conn.createStatement()) {
+            for (String statement : statements) {
+                stmt.execute(statement);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package orm;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import orm.util.BugDetectedException;
+
+import models.Vehicle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void writesAreCommittedTogether() {
+
+        try (Transaction tx = Transaction.begin()) {
+            new Vehicle("first", "diesel", 1.0).add();
+            new Vehicle("second", "diesel", 2.0).add();
+            tx.commit();
+        }
+
+        assertEquals(2, Table.search("Vehicle").size());
+        assertFalse(Transaction.isActive());
+    }
+
+    @Test
+    void aTransactionNotCommittedIsRolledBack() {
+
+        try (Transaction _ = Transaction.begin()) {
+            new Vehicle("forgotten", "diesel", 1.0).add();
+            assertEquals(1, Table.search("Vehicle").size());
+        }
+
+        assertEquals(0, Table.search("Vehicle").size());
+        assertThrows(IllegalStateException.class, () -> Table.inTransaction(() -> {
+            new Vehicle("failed", "diesel", 1.0).add();
+            throw new IllegalStateException("the unit of work fails");
+        }));
+        assertEquals(0, Table.search("Vehicle").size());
+    }
+
+    @Test
+    void aNestedTransactionRollsBackToItsSavepoint() {
+
+        try (Transaction outer = Transaction.begin()) {
+            new Vehicle("kept", "diesel", 1.0).add();
+            try (Transaction inner = Transaction.begin()) {
+                assertTrue(inner.isNested());
+                new Vehicle("undone", "diesel", 2.0).add();
+                inner.rollback();
+            }
+            outer.commit();
+        }
+
+        var vehicles = Table.search("Vehicle");
+        assertEquals(1, vehicles.size());
+        assertEquals("kept", ((Vehicle) vehicles.get(0)).getBrand());
+    }
+
+    @Test
+    void theEnclosingTransactionEndsLast() {
+        try (Transaction outer = Transaction.begin(); Transaction _ = Transaction.begin()) {
+            assertThrows(IllegalStateException.class, outer::commit);
+        }
+    }
+
+    @Test
+    void readsAreNotBlockedByAWriterInProgress() throws Exception {
+
+        new Vehicle("committed", "diesel", 1.0).add();
+
+        CountDownLatch written = new CountDownLatch(1), read = new CountDownLatch(1);
+        var writer = CompletableFuture.runAsync(() -> Table.inTransaction(() -> {
+            new Vehicle("pending", "diesel", 2.0).add();
+            written.countDown();
+            await(read);
+        }));
+
+        await(written);
+        assertEquals(1, Table.search("Vehicle").size());
+        read.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+        assertEquals(2, Table.search("Vehicle").size());
+    }
+
+    @Test
+    void busyErrorsAreRetried() {
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = Transaction.retryOnBusy(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw busy();
+            } return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() {
+
+        AtomicInteger attempts = new AtomicInteger();
+        var error = new BugDetectedException("not busy");
+        assertSame(error, assertThrows(BugDetectedException.class, () -> Transaction.retryOnBusy(() -> {
+            attempts.incrementAndGet();
+            throw error;
+        })));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void aDatabaseStayingBusyEndsTheRetries() {
+        var e = assertThrows(IllegalStateException.class, () -> Transaction.retryOnBusy(() -> {
+            throw busy();
+        }));
+        assertTrue(ConnectionPool.isBusy(e));
+    }
+
+    // the enclosing unit of work is the one started over
+    @Test
+    void busyErrorsInsideATransactionEndIt() {
+
+        AtomicInteger attempts = new AtomicInteger(), inner = new AtomicInteger();
+        Table.inTransaction(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                Transaction.retryOnBusy(() -> {
+                    inner.incrementAndGet();
+                    throw busy();
+                });
+            }
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, inner.get());
+    }
+
+    private static BugDetectedException busy() {
+        return new BugDetectedException("busy", new SQLiteException("database is locked", SQLiteErrorCode.SQLITE_BUSY));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package orm;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import orm.util.BugDetectedException;
+
+import models.Client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteQueueTest {
+
+    @BeforeEach
+    void reset() {
+        TestDatabase.reset();
+    }
+
+    @AfterEach
+    void disable() {
+        WriteQueue.disable();
+    }
+
+    @Test
+    void disablingCommitsTheQueuedWrites() {
+
+        WriteQueue.enable(4, Duration.ofMillis(20));
+        List<CompletableFuture<Integer>> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            added.add(new Client("Client " + i, null).addAsync());
+        }
+
+        WriteQueue.disable();
+        assertTrue(added.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(10, Table.search("Client").size());
+    }
+
+    @Test
+    void writesRacingWithDisableAreMadeDirectly() throws Exception {
+
+        WriteQueue.enable(4, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        var busy = Async.write(() -> {
+            try {
+                return release.await(10, TimeUnit.SECONDS) ? 1 : 0;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // disable() waits for the writer, the queue still routes writes meanwhile
+        Thread disabler = Thread.ofPlatform().start(WriteQueue::disable);
+        while (disabler.getState() != Thread.State.WAITING) {
+            Thread.sleep(5);
+        }
+        assertTrue(WriteQueue.routes());
+        Thread.ofPlatform().start(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+
+        assertEquals(1, new Client("Ada", "Lovelace").add());
+        disabler.join();
+        assertEquals(1, busy.get(5, TimeUnit.SECONDS));
+        assertFalse(WriteQueue.isEnabled());
+        assertEquals(1, Table.search("Client").size());
+    }
+
+    @Test
+    void aBusyDatabaseRunsTheWholeGroupAgain() throws Exception {
+
+        WriteQueue.enable(8, Duration.ofMillis(200));
+        AtomicInteger attempts = new AtomicInteger();
+        var added = WriteQueue.submit(() -> new Client("Ada", "Lovelace").add());
+        var busy = WriteQueue.submit(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new BugDetectedException("busy", new SQLiteException("database is locked", SQLiteErrorCode.SQLITE_BUSY));
+            } return 1;
+        });
+
+        assertEquals(1, busy.get(5, TimeUnit.SECONDS));
+        assertEquals(1, added.get(5, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        // the first run of the group was rolled back
+        assertEquals(1, Table.search("Client").size());
+        assertEquals(0, WriteQueue.stats().failures());
+    }
+
+    @Test
+    void anInterruptedWriterStopsAfterCommittingTheQueue() throws Exception {
+
+        WriteQueue.enable(4, Duration.ofMillis(1));
+        var queued = new Client("Ada", "Lovelace").addAsync();
+        Thread writer = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("orm-writer")).findFirst().orElseThrow();
+
+        writer.interrupt();
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+        assertEquals(1, queued.get(5, TimeUnit.SECONDS));
+        assertNull(WriteQueue.submit(() -> 1));
+        assertEquals(1, new Client("Grace", "Hopper").add());
+        assertEquals(2, Table.search("Client").size());
+    }
+}